@@ -0,0 +1,45 @@
+package algebraparsing.Benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import algebraparsing.Grammar;
+import algebraparsing.MatrixVectorGrammar;
+import algebraparsing.Terminal;
+
+// Grammar.asAffineEndomorphism() of a generated grammar, see GrammarGenerator
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class AffineEndomorphismBenchmark {
+
+	private static final int PRODUCTIONS_PER_NONTERMINAL = 3;
+	private static final double LEFT_RECURSION_RATIO = 0.1;
+	private static final int MAX_RHS_LENGTH = 4;
+	private static final int TERMINAL_COUNT = 4;
+
+	@Param({ "10", "100", "1000" })
+	public int nonterminals;
+
+	// the chance of each symbol of a production being a nonterminal, which
+	// is how full the matrix gets
+	@Param({ "0.1", "0.5" })
+	public double recursionDensity;
+
+	private Grammar<Terminal, Terminal> grammar;
+
+	@Setup
+	public void setup() {
+		grammar = new GrammarGenerator(PRODUCTIONS_PER_NONTERMINAL, recursionDensity, LEFT_RECURSION_RATIO,
+				MAX_RHS_LENGTH, TERMINAL_COUNT).generate(nonterminals, BenchmarkInputs.SEED);
+	}
+
+	@Benchmark
+	public MatrixVectorGrammar<Terminal> asAffineEndomorphism() {
+		return grammar.asAffineEndomorphism();
+	}
+}
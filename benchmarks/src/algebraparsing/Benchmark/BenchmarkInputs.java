@@ -0,0 +1,49 @@
+package algebraparsing.Benchmark;
+
+import java.util.*;
+
+import algebraparsing.KleeneAlgebra.KleeneMatrix;
+import algebraparsing.KleeneAlgebra.RegularExpression;
+
+// the inputs of the jmh benchmarks, every one generated from a fixed seed so
+// runs are comparable.
+public final class BenchmarkInputs {
+
+	public static final long SEED = 0x5eed;
+	static final char[] ATOMS = { 'a', 'b', 'c', 'd' };
+	// not one of ATOMS
+	static final char OTHER_ATOM = 'z';
+
+	// can't instantiate
+	private BenchmarkInputs() {}
+
+	// each entry is a random regexp of the given depth with probability
+	// density, otherwise empty
+	public static KleeneMatrix<RegularExpression<Character>> randomMatrix(int size, double density,
+			int depth, Random random) {
+		final KleeneMatrix.Builder<RegularExpression<Character>> builder =
+				new KleeneMatrix.Builder<RegularExpression<Character>>(size, size,
+						RegularExpression.<Character>emptyRegexp(), RegularExpression.<Character>emptyString());
+		for (int i = 0; i < size; ++i) {
+			for (int j = 0; j < size; ++j) {
+				if (random.nextDouble() < density)
+					builder.setAt(i, j, randomRegexp(depth, random));
+			}
+		}
+		return builder.build();
+	}
+
+	public static RegularExpression<Character> randomRegexp(int depth, Random random) {
+		if (depth == 0)
+			return RegularExpression.fromAtom(ATOMS[random.nextInt(ATOMS.length)]);
+		switch (random.nextInt(5)) {
+		case 0:
+			return randomRegexp(depth - 1, random).close();
+		case 1:
+		case 2:
+			return randomRegexp(depth - 1, random).add(randomRegexp(depth - 1, random));
+		default:
+			return randomRegexp(depth - 1, random).mul(randomRegexp(depth - 1, random));
+		}
+	}
+}
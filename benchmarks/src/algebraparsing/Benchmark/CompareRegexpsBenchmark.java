@@ -0,0 +1,47 @@
+package algebraparsing.Benchmark;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import algebraparsing.KleeneAlgebra.RegexpComparisonUtil;
+import algebraparsing.KleeneAlgebra.RegularExpression;
+
+// RegexpComparisonUtil.compareRegexps() of a random regexp plus an atom
+// against the same union the other way round. the atom occurs nowhere else,
+// so no construction rule can fold the two into one regexp, and the
+// comparison gets past the equals() check to decomposing both sides. it
+// stops at the first derivative pair that compares equal, so this measures
+// a decomposition and a step into the derivatives, not a walk over all of
+// them
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CompareRegexpsBenchmark {
+
+	@Param({ "2", "3", "4" })
+	public int depth;
+
+	private RegularExpression<Character> left;
+	private RegularExpression<Character> right;
+
+	@Setup
+	public void setup() {
+		final RegularExpression<Character> regexp =
+				BenchmarkInputs.randomRegexp(depth, new Random(BenchmarkInputs.SEED));
+		final RegularExpression<Character> other = RegularExpression.fromAtom(BenchmarkInputs.OTHER_ATOM);
+		left = regexp.add(other);
+		right = other.add(regexp);
+		if (left.equals(right))
+			throw new RuntimeException("operands of the comparison benchmark were built the same");
+	}
+
+	@Benchmark
+	public int compareRegexps() {
+		return RegexpComparisonUtil.compareRegexps(left, right);
+	}
+}
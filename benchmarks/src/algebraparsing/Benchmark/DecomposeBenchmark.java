@@ -0,0 +1,34 @@
+package algebraparsing.Benchmark;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import algebraparsing.KleeneAlgebra.DecomposedRegexp;
+import algebraparsing.KleeneAlgebra.RegularExpression;
+
+// RegularExpression.decompose() of a random regexp
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class DecomposeBenchmark {
+
+	@Param({ "4", "8", "12" })
+	public int depth;
+
+	private RegularExpression<Character> regexp;
+
+	@Setup
+	public void setup() {
+		regexp = BenchmarkInputs.randomRegexp(depth, new Random(BenchmarkInputs.SEED));
+	}
+
+	@Benchmark
+	public DecomposedRegexp<Character> decompose() {
+		return regexp.decompose();
+	}
+}
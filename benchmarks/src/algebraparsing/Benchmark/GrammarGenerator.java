@@ -0,0 +1,108 @@
+package algebraparsing.Benchmark;
+
+import java.util.*;
+
+import algebraparsing.Grammar;
+import algebraparsing.Grammar.TerminalConsolidator;
+import algebraparsing.Nonterminal;
+import algebraparsing.Production;
+import algebraparsing.Terminal;
+import algebraparsing.TerminalOrNonterminal;
+import algebraparsing.KleeneAlgebra.RegularExpression;
+
+// generates random grammars with a given shape, for stress testing.
+// the same seed and settings always give the same grammar.
+//
+// every nonterminal gets one production made only of terminals, so that
+// every nonterminal derives some string, and then further productions
+// whose symbols are each a nonterminal with probability recursionDensity.
+// a leftRecursionRatio fraction of those further productions start with
+// their own left hand side, which is what puts entries on the diagonal of
+// the matrix from Grammar.asAffineEndomorphism().
+public class GrammarGenerator {
+
+	private final int productionsPerNonterminal;
+	private final double recursionDensity;
+	private final double leftRecursionRatio;
+	private final int maxRhsLength;
+	private final int terminalCount;
+
+	public GrammarGenerator(int productionsPerNonterminal, double recursionDensity,
+			double leftRecursionRatio, int maxRhsLength, int terminalCount) {
+		if (productionsPerNonterminal < 1)
+			throw new IllegalArgumentException("need at least one production per nonterminal");
+		if (recursionDensity < 0 || recursionDensity > 1)
+			throw new IllegalArgumentException("recursion density must be between 0 and 1");
+		if (leftRecursionRatio < 0 || leftRecursionRatio > 1)
+			throw new IllegalArgumentException("left recursion ratio must be between 0 and 1");
+		if (maxRhsLength < 1)
+			throw new IllegalArgumentException("right hand sides must be allowed at least one symbol");
+		if (terminalCount < 1)
+			throw new IllegalArgumentException("need at least one terminal");
+		this.productionsPerNonterminal = productionsPerNonterminal;
+		this.recursionDensity = recursionDensity;
+		this.leftRecursionRatio = leftRecursionRatio;
+		this.maxRhsLength = maxRhsLength;
+		this.terminalCount = terminalCount;
+	}
+
+	public Grammar<Terminal, Terminal> generate(int nonterminalCount, long seed) {
+		if (nonterminalCount < 1)
+			throw new IllegalArgumentException("need at least one nonterminal");
+		final Random random = new Random(seed);
+		final List<Production<Terminal>> productions = new ArrayList<Production<Terminal>>();
+		for (int i = 0; i < nonterminalCount; ++i) {
+			final Nonterminal lhs = nonterminal(i);
+			final List<TerminalOrNonterminal<Terminal>> base = new ArrayList<TerminalOrNonterminal<Terminal>>();
+			final int baseLength = 1 + random.nextInt(maxRhsLength);
+			for (int l = 0; l < baseLength; ++l) {
+				base.add(terminal(random));
+			}
+			productions.add(new Production<Terminal>(lhs, base));
+
+			for (int k = 1; k < productionsPerNonterminal; ++k) {
+				final List<TerminalOrNonterminal<Terminal>> rhs = new ArrayList<TerminalOrNonterminal<Terminal>>();
+				final int length = 1 + random.nextInt(maxRhsLength);
+				int l = 0;
+				if (random.nextDouble() < leftRecursionRatio) {
+					rhs.add(TerminalOrNonterminal.<Terminal>fromNonterminal(lhs));
+					++l;
+				}
+				for (; l < length; ++l) {
+					rhs.add(random.nextDouble() < recursionDensity
+							? TerminalOrNonterminal.<Terminal>fromNonterminal(nonterminal(random.nextInt(nonterminalCount)))
+							: terminal(random));
+				}
+				productions.add(new Production<Terminal>(lhs, rhs));
+			}
+		}
+		return new Grammar<Terminal, Terminal>(nonterminal(0), productions, new Consolidator());
+	}
+
+	private static Nonterminal nonterminal(int i) {
+		return new Nonterminal("N" + i);
+	}
+
+	private TerminalOrNonterminal<Terminal> terminal(Random random) {
+		return TerminalOrNonterminal.fromTerminal(new Terminal("t" + random.nextInt(terminalCount)));
+	}
+
+	// concatenates terminals, each grammar gets its own so that grammars
+	// can be compiled on different threads
+	private static class Consolidator implements TerminalConsolidator<Terminal, Terminal> {
+
+		private RegularExpression<TerminalOrNonterminal<Terminal>> re = RegularExpression.emptyString();
+
+		@Override
+		public void consolidateTerminal(Terminal terminal) {
+			re = re.mul(RegularExpression.fromAtom(TerminalOrNonterminal.<Terminal>fromTerminal(terminal)));
+		}
+
+		@Override
+		public RegularExpression<TerminalOrNonterminal<Terminal>> asRegexpAndReset() {
+			final RegularExpression<TerminalOrNonterminal<Terminal>> ret = re;
+			re = RegularExpression.emptyString();
+			return ret;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package algebraparsing.Benchmark;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import algebraparsing.KleeneAlgebra.KleeneMatrix;
+import algebraparsing.KleeneAlgebra.RegularExpression;
+
+// KleeneMatrix.close() of a random regexp matrix. the closure grows much
+// faster than the matrix, so the sizes are smaller than for mul()
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class KleeneMatrixCloseBenchmark {
+
+	@Param({ "4", "8", "12" })
+	public int size;
+
+	// the fraction of entries that aren't empty
+	@Param({ "0.1", "0.3" })
+	public double density;
+
+	// of the regexps in the entries
+	@Param({ "1", "2" })
+	public int depth;
+
+	private KleeneMatrix<RegularExpression<Character>> matrix;
+
+	@Setup
+	public void setup() {
+		matrix = BenchmarkInputs.randomMatrix(size, density, depth, new Random(BenchmarkInputs.SEED));
+	}
+
+	@Benchmark
+	public KleeneMatrix<RegularExpression<Character>> close() {
+		// close() is memoized, so close a fresh copy every time. the copy
+		// is size^2 entries, next to nothing beside the closure
+		return matrix.toBuilder().build().close();
+	}
+}
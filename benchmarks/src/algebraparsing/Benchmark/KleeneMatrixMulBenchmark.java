@@ -0,0 +1,44 @@
+package algebraparsing.Benchmark;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import algebraparsing.KleeneAlgebra.KleeneMatrix;
+import algebraparsing.KleeneAlgebra.RegularExpression;
+
+// KleeneMatrix.mul() of two random regexp matrices
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class KleeneMatrixMulBenchmark {
+
+	@Param({ "8", "16", "32" })
+	public int size;
+
+	// the fraction of entries that aren't empty
+	@Param({ "0.1", "0.3" })
+	public double density;
+
+	// of the regexps in the entries
+	@Param({ "1", "3" })
+	public int depth;
+
+	private KleeneMatrix<RegularExpression<Character>> a;
+	private KleeneMatrix<RegularExpression<Character>> b;
+
+	@Setup
+	public void setup() {
+		a = BenchmarkInputs.randomMatrix(size, density, depth, new Random(BenchmarkInputs.SEED));
+		b = BenchmarkInputs.randomMatrix(size, density, depth, new Random(BenchmarkInputs.SEED + 1));
+	}
+
+	@Benchmark
+	public KleeneMatrix<RegularExpression<Character>> mul() {
+		return a.mul(b);
+	}
+}
@@ -0,0 +1,212 @@
+package algebraparsing.Benchmark;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+import java.util.function.Supplier;
+
+import algebraparsing.Grammar;
+import algebraparsing.MatrixVectorGrammar;
+import algebraparsing.Nonterminal;
+import algebraparsing.Terminal;
+import algebraparsing.TerminalOrNonterminal;
+import algebraparsing.KleeneAlgebra.CompileContext;
+import algebraparsing.KleeneAlgebra.CompileLimitExceededException;
+import algebraparsing.KleeneAlgebra.RegularExpression;
+
+// runs the whole pipeline, generated grammar -> matrix and vector -> solved
+// nonterminal expansions, over a sweep of grammar sizes, and writes a line
+// of csv per size. at the end it fits y = c * productions^k to the time,
+// peak heap and node counts and prints the exponents k.
+//
+// usage: ScalingHarness [csv file or -] [comma separated nonterminal counts]
+// each size runs under a CompileContext with a budget of TIME_LIMIT_MILLIS,
+// and the sweep stops at the first size that runs out of memory or time,
+// since the larger ones would only be worse.
+public class ScalingHarness {
+
+	private static final long SEED = 0x5eed;
+	private static final long TIME_LIMIT_MILLIS = 120000;
+	private static final int[] DEFAULT_SIZES = { 30, 100, 300, 1000, 3000, 10000, 30000 };
+	private static final GrammarGenerator GRAMMARS = new GrammarGenerator(3, 0.3, 0.2, 5, 16);
+
+	// can't instantiate
+	private ScalingHarness() {}
+
+	private static class Row {
+		int nonterminals;
+		int productions;
+		long endomorphismMillis;
+		long solveMillis;
+		long peakHeapBytes;
+		long matrixNodes;
+		long solutionNodes;
+		String status = "ok";
+
+		long totalMillis() {
+			return endomorphismMillis + solveMillis;
+		}
+
+		static String header() {
+			return "nonterminals,productions,endomorphism_ms,solve_ms,total_ms,peak_heap_bytes,matrix_nodes,solution_nodes,status";
+		}
+
+		@Override
+		public String toString() {
+			return nonterminals + "," + productions + "," + endomorphismMillis + "," + solveMillis + ","
+					+ totalMillis() + "," + peakHeapBytes + "," + matrixNodes + "," + solutionNodes + "," + status;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		final String file = args.length > 0 ? args[0] : "-";
+		int[] sizes = DEFAULT_SIZES;
+		if (args.length > 1) {
+			final String[] parts = args[1].split(",");
+			sizes = new int[parts.length];
+			for (int i = 0; i < parts.length; ++i) {
+				sizes[i] = Integer.parseInt(parts[i].trim());
+			}
+		}
+
+		final PrintWriter out = file.equals("-")
+				? new PrintWriter(System.out, true) : new PrintWriter(new FileWriter(file));
+		final List<Row> rows = new ArrayList<Row>();
+		try {
+			// once through the smallest size so the first row isn't mostly jit
+			measure(sizes[0]);
+
+			out.println(Row.header());
+			for (int size : sizes) {
+				final Row row = measure(size);
+				out.println(row);
+				out.flush();
+				rows.add(row);
+				if (!row.status.equals("ok"))
+					break;
+			}
+		} finally {
+			if (!file.equals("-"))
+				out.close();
+		}
+
+		System.out.println("# fitted exponents, y ~ productions^k");
+		System.out.println("# total_ms k=" + format(fitExponent(rows, "time")));
+		System.out.println("# peak_heap_bytes k=" + format(fitExponent(rows, "heap")));
+		System.out.println("# matrix_nodes k=" + format(fitExponent(rows, "matrix")));
+		System.out.println("# solution_nodes k=" + format(fitExponent(rows, "solution")));
+	}
+
+	private static Row measure(int nonterminals) {
+		final Row row = new Row();
+		row.nonterminals = nonterminals;
+		final Grammar<Terminal, Terminal> grammar = GRAMMARS.generate(nonterminals, SEED);
+		row.productions = grammar.productions().size();
+
+		final List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP)
+				heapPools.add(pool);
+		}
+		System.gc();
+		for (MemoryPoolMXBean pool : heapPools) {
+			pool.resetPeakUsage();
+		}
+
+		// the matrix and vector, for counting their nodes after the run
+		final List<MatrixVectorGrammar<Terminal>> mvgs = new ArrayList<MatrixVectorGrammar<Terminal>>(1);
+		final CompileContext budget = new CompileContext(CompileContext.NO_LIMIT, TIME_LIMIT_MILLIS,
+				CompileContext.NO_LIMIT);
+		try {
+			final Map<Nonterminal, RegularExpression<TerminalOrNonterminal<Terminal>>> solution = budget.run(
+					new Supplier<Map<Nonterminal, RegularExpression<TerminalOrNonterminal<Terminal>>>>() {
+				@Override
+				public Map<Nonterminal, RegularExpression<TerminalOrNonterminal<Terminal>>> get() {
+					long start = System.nanoTime();
+					final MatrixVectorGrammar<Terminal> mvg = grammar.asAffineEndomorphism();
+					row.endomorphismMillis = (System.nanoTime() - start) / 1000000;
+					mvgs.add(mvg);
+
+					start = System.nanoTime();
+					final Map<Nonterminal, RegularExpression<TerminalOrNonterminal<Terminal>>> ret = mvg.solve();
+					row.solveMillis = (System.nanoTime() - start) / 1000000;
+					return ret;
+				}
+			});
+
+			row.peakHeapBytes = peakHeap(heapPools);
+
+			final MatrixVectorGrammar<Terminal> mvg = mvgs.get(0);
+
+			final List<RegularExpression<TerminalOrNonterminal<Terminal>>> entries =
+					new ArrayList<RegularExpression<TerminalOrNonterminal<Terminal>>>();
+			for (int i = 0; i < mvg.matrix.getM(); ++i) {
+				for (int j = 0; j < mvg.matrix.getN(); ++j) {
+					entries.add(mvg.matrix.getAt(i, j));
+				}
+				entries.add(mvg.vector.getAt(i, 0));
+			}
+			row.matrixNodes = RegularExpression.nodeCount(entries);
+			row.solutionNodes = RegularExpression.nodeCount(solution.values());
+		} catch (CompileLimitExceededException e) {
+			// whichever phase ran out gets the rest of the time
+			if (mvgs.isEmpty())
+				row.endomorphismMillis = e.getStatistics().elapsedMillis;
+			else
+				row.solveMillis = e.getStatistics().elapsedMillis - row.endomorphismMillis;
+			row.peakHeapBytes = peakHeap(heapPools);
+			row.status = "timeout";
+		} catch (OutOfMemoryError e) {
+			row.peakHeapBytes = peakHeap(heapPools);
+			row.status = "oom";
+		}
+		return row;
+	}
+
+	private static long peakHeap(List<MemoryPoolMXBean> heapPools) {
+		long ret = 0;
+		for (MemoryPoolMXBean pool : heapPools) {
+			ret += pool.getPeakUsage().getUsed();
+		}
+		return ret;
+	}
+
+	// least squares slope of log y against log productions, over the sizes that completed
+	private static double fitExponent(List<Row> rows, String column) {
+		double sx = 0, sy = 0, sxx = 0, sxy = 0;
+		int n = 0;
+		for (Row row : rows) {
+			if (!row.status.equals("ok"))
+				continue;
+			final double y;
+			switch (column) {
+			case "time": y = row.totalMillis(); break;
+			case "heap": y = row.peakHeapBytes; break;
+			case "matrix": y = row.matrixNodes; break;
+			case "solution": y = row.solutionNodes; break;
+			default: throw new IllegalArgumentException("unknown column " + column);
+			}
+			// a zero can't be logged, and at that scale it's just noise anyway
+			if (y <= 0)
+				continue;
+			final double lx = Math.log(row.productions);
+			final double ly = Math.log(y);
+			sx += lx;
+			sy += ly;
+			sxx += lx * lx;
+			sxy += lx * ly;
+			++n;
+		}
+		if (n < 2)
+			return Double.NaN;
+		return (n * sxy - sx * sy) / (n * sxx - sx * sx);
+	}
+
+	private static String format(double d) {
+		return Double.isNaN(d) ? "n/a" : String.format("%.2f", d);
+	}
+}
@@ -0,0 +1,121 @@
+package algebraparsing.Automata;
+
+import java.util.*;
+
+import algebraparsing.KleeneAlgebra.CompileContext;
+import algebraparsing.KleeneAlgebra.RegularExpression;
+
+// builds an Nfa from a regexp with Antimirov's partial derivatives. where
+// decompose() takes the derivative by an atom as a single regexp (a sum),
+// the partial derivative keeps the summands apart as a set of terms, and the
+// states of the automaton are the terms. there are at most one more of them
+// than there are atom occurrences in the regexp, whereas the derivatives
+// from decompose() can blow up exponentially before they're normalized.
+//
+// the partial derivatives by every atom at once are the linear form of the
+// regexp:
+//   lf(a)     = {(a, e)}
+//   lf(e)     = lf(0) = {}
+//   lf(r + s) = lf(r) + lf(s)
+//   lf(r s)   = lf(r) s + lf(s) if r has the empty string, else lf(r) s
+//   lf(r*)    = lf(r) r*
+// where lf(r) s multiplies each term by s. a term accepts if it has the
+// empty string. every state counts against the state limit of the current
+// CompileContext.
+public class AntimirovNfa {
+
+	// can't instantiate
+	private AntimirovNfa() {}
+
+	public static <T> Nfa<T> build(RegularExpression<T> regexp) {
+		final Map<RegularExpression<T>, Integer> stateIds = new HashMap<RegularExpression<T>, Integer>();
+		final List<RegularExpression<T>> terms = new ArrayList<RegularExpression<T>>();
+		final Map<T, Integer> atomIds = new LinkedHashMap<T, Integer>();
+		final List<int[]> edges = new ArrayList<int[]>();
+
+		CompileContext.stateCreated();
+		stateIds.put(regexp, 0);
+		terms.add(regexp);
+		for (int state = 0; state < terms.size(); ++state) {
+			for (Map.Entry<T, Set<RegularExpression<T>>> entry : linearForm(terms.get(state)).entrySet()) {
+				Integer atom = atomIds.get(entry.getKey());
+				if (atom == null) {
+					atom = atomIds.size();
+					atomIds.put(entry.getKey(), atom);
+				}
+				for (RegularExpression<T> term : entry.getValue()) {
+					Integer target = stateIds.get(term);
+					if (target == null) {
+						CompileContext.stateCreated();
+						target = terms.size();
+						stateIds.put(term, target);
+						terms.add(term);
+					}
+					edges.add(new int[] { state, atom, target });
+				}
+			}
+		}
+
+		final boolean[] accepting = new boolean[terms.size()];
+		for (int state = 0; state < terms.size(); ++state) {
+			accepting[state] = terms.get(state).hasEmptyString();
+		}
+		return Nfa.fromEdges(new ArrayList<T>(atomIds.keySet()), 0, accepting, edges);
+	}
+
+	// the partial derivatives of the regexp by each atom it can start with
+	public static <T> Map<T, Set<RegularExpression<T>>> linearForm(RegularExpression<T> regexp) {
+		final Map<T, Set<RegularExpression<T>>> ret = new LinkedHashMap<T, Set<RegularExpression<T>>>();
+		addLinearForm(regexp, RegularExpression.<T>emptyString(), ret);
+		return ret;
+	}
+
+	// adds lf(regexp) suffix to form. cat and union chains are looped
+	// along rather than recursed into, like decompose() does
+	private static <T> void addLinearForm(RegularExpression<T> regexp, RegularExpression<T> suffix,
+			Map<T, Set<RegularExpression<T>>> form) {
+		switch (regexp.kind()) {
+		case ATOM:
+			add(form, regexp.atomValue(), suffix);
+			break;
+		case CLOSURE:
+			addLinearForm(regexp.children().get(0), regexp.mul(suffix), form);
+			break;
+		case UNION:
+			RegularExpression<T> summands = regexp;
+			while (summands.kind() == RegularExpression.Kind.UNION) {
+				addLinearForm(summands.children().get(0), suffix, form);
+				summands = summands.children().get(1);
+			}
+			addLinearForm(summands, suffix, form);
+			break;
+		case CAT:
+			// c1 (c2 (... cn)): lf(c1) t2 + lf(c2) t3 + ... for as long as
+			// the factors have the empty string, ti being ci (... cn). with
+			// no suffix the terms are the tails themselves, shared with the
+			// regexp, so a chain of n factors makes n terms and not n^2 nodes
+			final boolean noSuffix = suffix.equals(RegularExpression.<T>emptyString());
+			RegularExpression<T> tail = regexp;
+			while (tail.kind() == RegularExpression.Kind.CAT) {
+				final RegularExpression<T> factor = tail.children().get(0);
+				tail = tail.children().get(1);
+				addLinearForm(factor, noSuffix ? tail : tail.mul(suffix), form);
+				if (!factor.hasEmptyString())
+					return;
+			}
+			addLinearForm(tail, suffix, form);
+			break;
+		default:
+			// the empty string and the empty regexp start with no atom
+		}
+	}
+
+	private static <T> void add(Map<T, Set<RegularExpression<T>>> form, T atom, RegularExpression<T> term) {
+		Set<RegularExpression<T>> terms = form.get(atom);
+		if (terms == null) {
+			terms = new LinkedHashSet<RegularExpression<T>>();
+			form.put(atom, terms);
+		}
+		terms.add(term);
+	}
+}
@@ -0,0 +1,229 @@
+package algebraparsing.Automata;
+
+import java.util.*;
+
+import algebraparsing.KleeneAlgebra.RegularExpression;
+
+// runs the Glushkov automata of several regexps at once, with the set of
+// active positions of all of them packed into one long[] bit vector. a step
+// is
+//   next = (follow(active) | first) & atomMask(symbol)
+// with first only or'ed in at the start of a match. since a position is only
+// entered by its own atom, masking by the symbol does the transition. for
+// the positions whose only follower is the next position, as in a
+// concatenation of atoms, follow() is a shift, which is the classic
+// shift-and. for the rest it comes from tables precomputed for every value of
+// every byte of the vector, each entry a whole vector. so a step costs
+// O(words) for the shift and the mask, plus O(words) for every byte holding
+// an active position that isn't just followed by the next one, which at
+// worst is positions / 8 * words, quadratic in the positions. there's no
+// dfa to build and nothing that can blow up.
+//
+// the tables take positions squared over two longs, 1MB at MAX_POSITIONS,
+// so the number of positions over all patterns is limited to a few hundred,
+// past that an AntimirovNfa with a LazyDfa is the better choice.
+// instances are immutable and can be shared between threads.
+public final class BitParallelMatcher<T> {
+
+	public static final int MAX_POSITIONS = 512;
+
+	// reports a match of a pattern, end being the index just past its last symbol
+	public static interface MatchListener {
+		void match(int pattern, long end);
+	}
+
+	private final int patternCount;
+	private final int positionCount;
+	private final int words;
+	private final int[] patternOfPosition;
+	private final BitSet nullablePatterns;
+	private final long[] first;
+	private final long[] last;
+	// the positions followed by the next position and nothing else, whose
+	// follow is done by shifting rather than from the tables
+	private final long[] shifted;
+	private final Map<T, long[]> atomMasks;
+	// follow of the 8 positions 8c to 8c + 7 for each value of them, at
+	// (c * 256 + value) * words
+	private final long[] followTable;
+
+	private BitParallelMatcher(List<GlushkovAutomaton<T>> automata) {
+		int positions = 0;
+		for (GlushkovAutomaton<T> automaton : automata) {
+			positions += automaton.positionCount();
+		}
+		if (positions > MAX_POSITIONS)
+			throw new IllegalArgumentException(positions + " positions, at most " + MAX_POSITIONS + " are supported");
+		this.patternCount = automata.size();
+		this.positionCount = positions;
+		this.words = Math.max(1, (positions + 63) >>> 6);
+		this.patternOfPosition = new int[positions];
+		this.nullablePatterns = new BitSet();
+		this.first = new long[words];
+		this.last = new long[words];
+		this.shifted = new long[words];
+		this.atomMasks = new HashMap<T, long[]>();
+		final long[][] follow = new long[positions][];
+
+		int offset = 0;
+		for (int k = 0; k < automata.size(); ++k) {
+			final GlushkovAutomaton<T> automaton = automata.get(k);
+			if (automaton.isNullable())
+				nullablePatterns.set(k);
+			setBits(first, automaton.first(), offset);
+			setBits(last, automaton.last(), offset);
+			for (int p = 0; p < automaton.positionCount(); ++p) {
+				patternOfPosition[offset + p] = k;
+				long[] mask = atomMasks.get(automaton.atom(p));
+				if (mask == null) {
+					mask = new long[words];
+					atomMasks.put(automaton.atom(p), mask);
+				}
+				set(mask, offset + p);
+				follow[offset + p] = new long[words];
+				final BitSet followers = automaton.follow(p);
+				if (followers.cardinality() == 1 && followers.get(p + 1))
+					set(shifted, offset + p);
+				else
+					setBits(follow[offset + p], followers, offset);
+			}
+			offset += automaton.positionCount();
+		}
+
+		// each entry is the one with its lowest bit cleared, plus the
+		// follow of that bit
+		final int chunks = (positions + 7) >>> 3;
+		this.followTable = new long[chunks * 256 * words];
+		for (int c = 0; c < chunks; ++c) {
+			for (int value = 1; value < 256; ++value) {
+				final int position = 8 * c + Integer.numberOfTrailingZeros(value);
+				final int at = (c * 256 + value) * words;
+				final int without = (c * 256 + (value & (value - 1))) * words;
+				for (int w = 0; w < words; ++w) {
+					followTable[at + w] = followTable[without + w]
+							| (position < positions ? follow[position][w] : 0);
+				}
+			}
+		}
+	}
+
+	public static <T> BitParallelMatcher<T> of(List<? extends RegularExpression<T>> patterns) {
+		final List<GlushkovAutomaton<T>> automata = new ArrayList<GlushkovAutomaton<T>>();
+		for (RegularExpression<T> pattern : patterns) {
+			automata.add(GlushkovAutomaton.build(pattern));
+		}
+		return new BitParallelMatcher<T>(automata);
+	}
+
+	public int patternCount() { return patternCount; }
+	public int positionCount() { return positionCount; }
+
+	// the patterns that match the whole of the input
+	public BitSet matches(Iterable<? extends T> input) {
+		long[] active = new long[words];
+		long[] next = new long[words];
+		boolean started = false;
+		for (T symbol : input) {
+			step(active, next, symbol, !started);
+			started = true;
+			final long[] swap = active;
+			active = next;
+			next = swap;
+			if (isZero(active))
+				return new BitSet();
+		}
+		if (!started)
+			return (BitSet) nullablePatterns.clone();
+		final BitSet ret = new BitSet();
+		for (int w = 0; w < words; ++w) {
+			long accepted = active[w] & last[w];
+			while (accepted != 0) {
+				ret.set(patternOfPosition[(w << 6) + Long.numberOfTrailingZeros(accepted)]);
+				accepted &= accepted - 1;
+			}
+		}
+		return ret;
+	}
+
+	// reports every nonempty match of every pattern anywhere in the input,
+	// each pattern at most once per end index
+	public void find(Iterable<? extends T> input, MatchListener listener) {
+		long[] active = new long[words];
+		long[] next = new long[words];
+		final BitSet reported = new BitSet(patternCount);
+		long index = 0;
+		for (T symbol : input) {
+			step(active, next, symbol, true);
+			final long[] swap = active;
+			active = next;
+			next = swap;
+			++index;
+			reported.clear();
+			for (int w = 0; w < words; ++w) {
+				long accepted = active[w] & last[w];
+				while (accepted != 0) {
+					final int pattern = patternOfPosition[(w << 6) + Long.numberOfTrailingZeros(accepted)];
+					if (!reported.get(pattern)) {
+						reported.set(pattern);
+						listener.match(pattern, index);
+					}
+					accepted &= accepted - 1;
+				}
+			}
+		}
+	}
+
+	private void step(long[] active, long[] next, T symbol, boolean start) {
+		final long[] mask = atomMasks.get(symbol);
+		if (mask == null) {
+			Arrays.fill(next, 0);
+			return;
+		}
+		if (start)
+			System.arraycopy(first, 0, next, 0, words);
+		else
+			Arrays.fill(next, 0);
+		for (int w = 0; w < words; ++w) {
+			final long shifting = active[w] & shifted[w];
+			next[w] |= shifting << 1;
+			if (w + 1 < words)
+				next[w + 1] |= shifting >>> 63;
+		}
+		for (int w = 0; w < words; ++w) {
+			long bits = active[w] & ~shifted[w];
+			int chunk = w << 3;
+			while (bits != 0) {
+				final int value = (int) (bits & 0xff);
+				if (value != 0) {
+					final int at = (chunk * 256 + value) * words;
+					for (int v = 0; v < words; ++v) {
+						next[v] |= followTable[at + v];
+					}
+				}
+				bits >>>= 8;
+				++chunk;
+			}
+		}
+		for (int w = 0; w < words; ++w) {
+			next[w] &= mask[w];
+		}
+	}
+
+	private static boolean isZero(long[] bits) {
+		for (long word : bits) {
+			if (word != 0)
+				return false;
+		}
+		return true;
+	}
+
+	private static void set(long[] bits, int position) {
+		bits[position >>> 6] |= 1L << position;
+	}
+
+	private static void setBits(long[] bits, BitSet positions, int offset) {
+		for (int p = positions.nextSetBit(0); p >= 0; p = positions.nextSetBit(p + 1)) {
+			set(bits, offset + p);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package algebraparsing.Automata;
+
+import java.util.*;
+
+import algebraparsing.KleeneAlgebra.CompileContext;
+
+// the complete subset construction of an Nfa, as a transition table of
+// stateCount() rows of atomCount() ints. unlike a LazyDfa every state is
+// worked out up front, and every state has a transition on every atom,
+// going to DEAD (the empty set of nfa states) when there's no way on. so a
+// run over some input is a total function from states to states, which is
+// what ParallelDfaMatcher composes.
+//
+// the construction can blow up exponentially, so it gives up past
+// maxStates states, and every state counts against the state limit of the
+// current CompileContext.
+// instances are immutable and can be shared between threads.
+public final class Dfa<T> {
+
+	// the empty set of nfa states, no input gets out of it
+	public static final int DEAD = 0;
+
+	private final Nfa<T> nfa;
+	private final int stateCount;
+	private final int atomCount;
+	private final int start;
+	private final boolean[] accepting;
+	// the target of state s on atom a at s * atomCount + a
+	private final int[] transitions;
+
+	private Dfa(Nfa<T> nfa, int start, boolean[] accepting, int[] transitions) {
+		this.nfa = nfa;
+		this.stateCount = accepting.length;
+		this.atomCount = nfa.atomCount();
+		this.start = start;
+		this.accepting = accepting;
+		this.transitions = transitions;
+	}
+
+	static <T> Dfa<T> determinize(Nfa<T> nfa, int maxStates) {
+		if (maxStates < 2)
+			throw new IllegalArgumentException("need room for at least the start and dead states");
+		final int atomCount = nfa.atomCount();
+		final List<int[]> subsets = new ArrayList<int[]>();
+		final Map<LazyDfa.Subset, Integer> ids = new HashMap<LazyDfa.Subset, Integer>();
+		int[] transitions = new int[16 * Math.max(1, atomCount)];
+		final BitSet scratch = new BitSet(nfa.stateCount());
+
+		intern(new int[0], subsets, ids, maxStates);
+		final int start = intern(new int[] { nfa.startState() }, subsets, ids, maxStates);
+		for (int state = 0; state < subsets.size(); ++state) {
+			if ((long) subsets.size() * atomCount > Integer.MAX_VALUE - 8)
+				throw new IllegalArgumentException("the transition table doesn't fit in an array");
+			if (subsets.size() * atomCount > transitions.length)
+				transitions = Arrays.copyOf(transitions, (int) Math.min(Integer.MAX_VALUE - 8,
+						Math.max(2L * transitions.length, subsets.size() * atomCount)));
+			for (int atom = 0; atom < atomCount; ++atom) {
+				scratch.clear();
+				for (int s : subsets.get(state)) {
+					for (int e = nfa.edgesStart(s, atom); e < nfa.edgesEnd(s) && nfa.edgeAtom(e) == atom; ++e) {
+						scratch.set(nfa.edgeTarget(e));
+					}
+				}
+				final int[] next = new int[scratch.cardinality()];
+				int n = 0;
+				for (int s = scratch.nextSetBit(0); s >= 0; s = scratch.nextSetBit(s + 1)) {
+					next[n++] = s;
+				}
+				transitions[state * atomCount + atom] = intern(next, subsets, ids, maxStates);
+			}
+		}
+
+		final boolean[] accepting = new boolean[subsets.size()];
+		for (int state = 0; state < subsets.size(); ++state) {
+			for (int s : subsets.get(state)) {
+				if (nfa.isAccepting(s)) {
+					accepting[state] = true;
+					break;
+				}
+			}
+		}
+		return new Dfa<T>(nfa, start, accepting, Arrays.copyOf(transitions, subsets.size() * atomCount));
+	}
+
+	private static int intern(int[] subset, List<int[]> subsets, Map<LazyDfa.Subset, Integer> ids, int maxStates) {
+		final LazyDfa.Subset key = new LazyDfa.Subset(subset);
+		final Integer existing = ids.get(key);
+		if (existing != null)
+			return existing;
+		if (subsets.size() >= maxStates)
+			throw new IllegalArgumentException("the dfa has more than " + maxStates + " states");
+		CompileContext.stateCreated();
+		final int id = subsets.size();
+		subsets.add(subset);
+		ids.put(key, id);
+		return id;
+	}
+
+	public Nfa<T> nfa() { return nfa; }
+	public int stateCount() { return stateCount; }
+	public int atomCount() { return atomCount; }
+	public int start() { return start; }
+	public boolean isAccepting(int state) { return accepting[state]; }
+
+	// -1 for an atom the automaton has no transitions on
+	public int atomId(T atom) {
+		return nfa.atomId(atom);
+	}
+
+	// the ids of the symbols of the input, -1 for unknown ones
+	public int[] atomIds(Iterable<? extends T> input) {
+		int[] ret = new int[16];
+		int n = 0;
+		for (T symbol : input) {
+			if (n == ret.length)
+				ret = Arrays.copyOf(ret, 2 * n);
+			ret[n++] = atomId(symbol);
+		}
+		return Arrays.copyOf(ret, n);
+	}
+
+	// an atom out of range, such as -1 for an unknown symbol, leads to DEAD
+	public int step(int state, int atom) {
+		if (atom < 0 || atom >= atomCount)
+			return DEAD;
+		return transitions[state * atomCount + atom];
+	}
+
+	public boolean matches(Iterable<? extends T> input) {
+		int state = start;
+		for (T symbol : input) {
+			state = step(state, atomId(symbol));
+			if (state == DEAD)
+				return false;
+		}
+		return accepting[state];
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(stateCount).append(" states, start ").append(start).append('\n');
+		for (int s = 0; s < stateCount; ++s) {
+			sb.append(s).append(accepting[s] ? " (accepting):" : ":");
+			for (int a = 0; a < atomCount; ++a) {
+				if (transitions[s * atomCount + a] != DEAD)
+					sb.append(' ').append(nfa.atom(a)).append("->").append(transitions[s * atomCount + a]);
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,159 @@
+package algebraparsing.Automata;
+
+import java.util.*;
+
+import algebraparsing.KleeneAlgebra.RegularExpression;
+
+// the position automaton of a regexp. every occurrence of an atom is a
+// position, numbered from 0 in order of occurrence, and a position is only
+// ever entered by its own atom. the automaton is given by
+//   first   the positions that can match the first symbol
+//   last    the positions that can match the last symbol
+//   follow  for each position, the positions that can match the next symbol
+// and whether the empty string matches. shared subexpressions get their own
+// positions at every occurrence, so the number of positions is that of the
+// regexp written out as a tree.
+//
+// there are no empty transitions and as many states as positions plus one,
+// which is what makes bit-parallel simulation (BitParallelMatcher) work.
+public final class GlushkovAutomaton<T> {
+
+	private final List<T> atoms;
+	private final BitSet first;
+	private final BitSet last;
+	private final List<BitSet> follow;
+	private final boolean nullable;
+
+	private GlushkovAutomaton(List<T> atoms, BitSet first, BitSet last, List<BitSet> follow, boolean nullable) {
+		this.atoms = Collections.unmodifiableList(atoms);
+		this.first = first;
+		this.last = last;
+		this.follow = follow;
+		this.nullable = nullable;
+	}
+
+	public int positionCount() { return atoms.size(); }
+	public T atom(int position) { return atoms.get(position); }
+	public boolean isNullable() { return nullable; }
+
+	public BitSet first() { return (BitSet) first.clone(); }
+	public BitSet last() { return (BitSet) last.clone(); }
+	public BitSet follow(int position) { return (BitSet) follow.get(position).clone(); }
+
+	// first, last and whether the empty string matches, for a subexpression
+	private static final class Summary {
+		final BitSet first;
+		final BitSet last;
+		final boolean nullable;
+
+		Summary(BitSet first, BitSet last, boolean nullable) {
+			this.first = first;
+			this.last = last;
+			this.nullable = nullable;
+		}
+	}
+
+	public static <T> GlushkovAutomaton<T> build(RegularExpression<T> regexp) {
+		final List<T> atoms = new ArrayList<T>();
+		final List<BitSet> follow = new ArrayList<BitSet>();
+		final Summary summary = summarize(regexp, atoms, follow);
+		return new GlushkovAutomaton<T>(atoms, summary.first, summary.last, follow, summary.nullable);
+	}
+
+	// numbers the positions of the regexp and adds to the follow sets, cat
+	// and union chains are looped along rather than recursed into
+	private static <T> Summary summarize(RegularExpression<T> regexp, List<T> atoms, List<BitSet> follow) {
+		switch (regexp.kind()) {
+		case ATOM: {
+			final BitSet position = new BitSet();
+			position.set(atoms.size());
+			atoms.add(regexp.atomValue());
+			follow.add(new BitSet());
+			return new Summary(position, (BitSet) position.clone(), false);
+		}
+		case EMPTY_STRING:
+			return new Summary(new BitSet(), new BitSet(), true);
+		case EMPTY:
+			return new Summary(new BitSet(), new BitSet(), false);
+		case CLOSURE: {
+			final Summary child = summarize(regexp.children().get(0), atoms, follow);
+			addFollow(child.last, child.first, follow);
+			return new Summary(child.first, child.last, true);
+		}
+		case UNION: {
+			final BitSet first = new BitSet();
+			final BitSet last = new BitSet();
+			boolean nullable = false;
+			RegularExpression<T> rest = regexp;
+			while (true) {
+				final boolean more = rest.kind() == RegularExpression.Kind.UNION;
+				final Summary summand = summarize(more ? rest.children().get(0) : rest, atoms, follow);
+				first.or(summand.first);
+				last.or(summand.last);
+				nullable |= summand.nullable;
+				if (!more)
+					break;
+				rest = rest.children().get(1);
+			}
+			return new Summary(first, last, nullable);
+		}
+		case CAT: {
+			Summary acc = null;
+			RegularExpression<T> rest = regexp;
+			while (true) {
+				final boolean more = rest.kind() == RegularExpression.Kind.CAT;
+				final Summary factor = summarize(more ? rest.children().get(0) : rest, atoms, follow);
+				if (acc == null) {
+					acc = factor;
+				} else {
+					addFollow(acc.last, factor.first, follow);
+					final BitSet first = acc.first;
+					if (acc.nullable)
+						first.or(factor.first);
+					final BitSet last = factor.last;
+					if (factor.nullable)
+						last.or(acc.last);
+					acc = new Summary(first, last, acc.nullable && factor.nullable);
+				}
+				if (!more)
+					break;
+				rest = rest.children().get(1);
+			}
+			return acc;
+		}
+		default:
+			throw new RuntimeException("unknown kind " + regexp.kind());
+		}
+	}
+
+	private static void addFollow(BitSet from, BitSet to, List<BitSet> follow) {
+		for (int p = from.nextSetBit(0); p >= 0; p = from.nextSetBit(p + 1)) {
+			follow.get(p).or(to);
+		}
+	}
+
+	// as an Nfa, state 0 being the start and state p + 1 position p
+	public Nfa<T> toNfa() {
+		final List<T> alphabet = new ArrayList<T>(new LinkedHashSet<T>(atoms));
+		final Map<T, Integer> atomIds = new HashMap<T, Integer>();
+		for (int i = 0; i < alphabet.size(); ++i) {
+			atomIds.put(alphabet.get(i), i);
+		}
+		final List<int[]> edges = new ArrayList<int[]>();
+		for (int q = first.nextSetBit(0); q >= 0; q = first.nextSetBit(q + 1)) {
+			edges.add(new int[] { 0, atomIds.get(atoms.get(q)), q + 1 });
+		}
+		for (int p = 0; p < atoms.size(); ++p) {
+			final BitSet next = follow.get(p);
+			for (int q = next.nextSetBit(0); q >= 0; q = next.nextSetBit(q + 1)) {
+				edges.add(new int[] { p + 1, atomIds.get(atoms.get(q)), q + 1 });
+			}
+		}
+		final boolean[] accepting = new boolean[atoms.size() + 1];
+		accepting[0] = nullable;
+		for (int p = last.nextSetBit(0); p >= 0; p = last.nextSetBit(p + 1)) {
+			accepting[p + 1] = true;
+		}
+		return Nfa.fromEdges(alphabet, 0, accepting, edges);
+	}
+}
@@ -0,0 +1,162 @@
+package algebraparsing.Automata;
+
+import java.util.*;
+
+// the subset construction of an Nfa, done lazily: a state of the dfa is a
+// set of nfa states, and it and its transitions are only worked out when
+// matching first reaches them, so the input decides how much of a possibly
+// exponential dfa gets built.
+//
+// at most maxStates states are kept. when another one is needed the cache is
+// flushed and building starts over from the current state, so memory stays
+// bounded whatever the input, at the cost of redoing work. a state id is
+// only good until the next flush, so callers should only hold on to the
+// state returned by the latest step().
+//
+// not thread safe, every thread matching needs its own instance.
+public final class LazyDfa<T> {
+
+	// the empty set of nfa states, no input gets out of it
+	public static final int DEAD = -1;
+	private static final int UNKNOWN = -2;
+
+	private final Nfa<T> nfa;
+	private final int maxStates;
+
+	private final List<int[]> subsets = new ArrayList<int[]>();
+	private final List<int[]> transitions = new ArrayList<int[]>();
+	private final BitSet accepting = new BitSet();
+	private final Map<Subset, Integer> ids = new HashMap<Subset, Integer>();
+	private int start = UNKNOWN;
+	private long flushes = 0;
+
+	private final BitSet scratch;
+
+	LazyDfa(Nfa<T> nfa, int maxStates) {
+		if (maxStates < 1)
+			throw new IllegalArgumentException("need room for at least one state");
+		this.nfa = nfa;
+		this.maxStates = maxStates;
+		this.scratch = new BitSet(nfa.stateCount());
+	}
+
+	public Nfa<T> nfa() { return nfa; }
+
+	// states currently built
+	public int stateCount() { return subsets.size(); }
+
+	public long flushCount() { return flushes; }
+
+	public int start() {
+		if (start == UNKNOWN)
+			start = intern(new int[] { nfa.startState() });
+		return start;
+	}
+
+	public boolean isAccepting(int state) {
+		return state != DEAD && accepting.get(state);
+	}
+
+	// the nfa states making up a dfa state
+	public int[] subset(int state) {
+		return subsets.get(state).clone();
+	}
+
+	public int step(int state, int atom) {
+		if (state == DEAD)
+			return DEAD;
+		final int[] row = transitions.get(state);
+		if (row[atom] != UNKNOWN)
+			return row[atom];
+
+		scratch.clear();
+		for (int s : subsets.get(state)) {
+			for (int e = nfa.edgesStart(s, atom); e < nfa.edgesEnd(s) && nfa.edgeAtom(e) == atom; ++e) {
+				scratch.set(nfa.edgeTarget(e));
+			}
+		}
+		if (scratch.isEmpty()) {
+			row[atom] = DEAD;
+			return DEAD;
+		}
+		final int[] next = new int[scratch.cardinality()];
+		int n = 0;
+		for (int s = scratch.nextSetBit(0); s >= 0; s = scratch.nextSetBit(s + 1)) {
+			next[n++] = s;
+		}
+		final Integer existing = ids.get(new Subset(next));
+		if (existing != null) {
+			row[atom] = existing;
+			return existing;
+		}
+		if (subsets.size() >= maxStates) {
+			// the state being left goes with the rest, so there's no
+			// point recording the transition
+			flush();
+			return intern(next);
+		}
+		final int target = intern(next);
+		row[atom] = target;
+		return target;
+	}
+
+	public boolean matches(Iterable<? extends T> input) {
+		int state = start();
+		for (T symbol : input) {
+			final int atom = nfa.atomId(symbol);
+			if (atom < 0)
+				return false;
+			state = step(state, atom);
+			if (state == DEAD)
+				return false;
+		}
+		return isAccepting(state);
+	}
+
+	private int intern(int[] subset) {
+		final int id = subsets.size();
+		subsets.add(subset);
+		final int[] row = new int[nfa.atomCount()];
+		Arrays.fill(row, UNKNOWN);
+		transitions.add(row);
+		for (int s : subset) {
+			if (nfa.isAccepting(s)) {
+				accepting.set(id);
+				break;
+			}
+		}
+		ids.put(new Subset(subset), id);
+		return id;
+	}
+
+	private void flush() {
+		subsets.clear();
+		transitions.clear();
+		accepting.clear();
+		ids.clear();
+		start = UNKNOWN;
+		++flushes;
+	}
+
+	// a sorted set of nfa states as a hash key, Dfa uses it too
+	static final class Subset {
+		private final int[] states;
+		private final int hash;
+
+		Subset(int[] states) {
+			this.states = states;
+			this.hash = Arrays.hashCode(states);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Subset)) return false;
+			return Arrays.equals(states, ((Subset) other).states);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
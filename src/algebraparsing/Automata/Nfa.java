@@ -0,0 +1,162 @@
+package algebraparsing.Automata;
+
+import java.util.*;
+
+// a nondeterministic automaton without empty transitions, flattened into
+// int arrays. atoms are numbered 0 to atomCount() - 1 and states 0 to
+// stateCount() - 1, and the edges of each state are kept together, sorted by
+// atom and then target, so the edges of state s are edgesStart(s) up to
+// edgesEnd(s) and those for one atom are a contiguous run among them.
+// instances are immutable.
+public final class Nfa<T> {
+
+	private final List<T> atoms;
+	private final Map<T, Integer> atomIds;
+	private final int start;
+	private final boolean[] accepting;
+	private final int[] edgeOffsets;
+	private final int[] edgeAtoms;
+	private final int[] edgeTargets;
+
+	private Nfa(List<T> atoms, int start, boolean[] accepting,
+			int[] edgeOffsets, int[] edgeAtoms, int[] edgeTargets) {
+		this.atoms = Collections.unmodifiableList(new ArrayList<T>(atoms));
+		this.atomIds = new HashMap<T, Integer>();
+		for (int i = 0; i < atoms.size(); ++i) {
+			this.atomIds.put(atoms.get(i), i);
+		}
+		this.start = start;
+		this.accepting = accepting;
+		this.edgeOffsets = edgeOffsets;
+		this.edgeAtoms = edgeAtoms;
+		this.edgeTargets = edgeTargets;
+	}
+
+	// edges are (from, atom, to) triples in any order, duplicates are dropped
+	static <T> Nfa<T> fromEdges(List<T> atoms, int start, boolean[] accepting, List<int[]> edges) {
+		final int stateCount = accepting.length;
+		if (start < 0 || start >= stateCount)
+			throw new IllegalArgumentException("start state " + start + " out of range");
+		final List<int[]> sorted = new ArrayList<int[]>(edges);
+		Collections.sort(sorted, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] a, int[] b) {
+				for (int i = 0; i < 3; ++i) {
+					if (a[i] != b[i])
+						return Integer.compare(a[i], b[i]);
+				}
+				return 0;
+			}
+		});
+		final int[] edgeOffsets = new int[stateCount + 1];
+		final int[] edgeAtoms = new int[sorted.size()];
+		final int[] edgeTargets = new int[sorted.size()];
+		int n = 0;
+		int[] last = null;
+		for (int[] edge : sorted) {
+			if (last != null && Arrays.equals(edge, last))
+				continue;
+			if (edge[0] < 0 || edge[0] >= stateCount || edge[2] < 0 || edge[2] >= stateCount
+					|| edge[1] < 0 || edge[1] >= atoms.size())
+				throw new IllegalArgumentException("edge " + Arrays.toString(edge) + " out of range");
+			++edgeOffsets[edge[0] + 1];
+			edgeAtoms[n] = edge[1];
+			edgeTargets[n] = edge[2];
+			++n;
+			last = edge;
+		}
+		for (int s = 0; s < stateCount; ++s) {
+			edgeOffsets[s + 1] += edgeOffsets[s];
+		}
+		return new Nfa<T>(atoms, start, accepting.clone(), edgeOffsets,
+				Arrays.copyOf(edgeAtoms, n), Arrays.copyOf(edgeTargets, n));
+	}
+
+	public int atomCount() { return atoms.size(); }
+	public T atom(int id) { return atoms.get(id); }
+	public List<T> atoms() { return atoms; }
+
+	// -1 if the atom isn't in the alphabet, it then has no edges at all
+	public int atomId(T atom) {
+		final Integer ret = atomIds.get(atom);
+		return ret == null ? -1 : ret;
+	}
+
+	public int stateCount() { return accepting.length; }
+	public int startState() { return start; }
+	public boolean isAccepting(int state) { return accepting[state]; }
+
+	public int edgeCount() { return edgeAtoms.length; }
+	public int edgesStart(int state) { return edgeOffsets[state]; }
+	public int edgesEnd(int state) { return edgeOffsets[state + 1]; }
+	public int edgeAtom(int edge) { return edgeAtoms[edge]; }
+	public int edgeTarget(int edge) { return edgeTargets[edge]; }
+
+	// the first of the state's edges for the atom, or where it would be
+	int edgesStart(int state, int atom) {
+		int lo = edgeOffsets[state], hi = edgeOffsets[state + 1];
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (edgeAtoms[mid] < atom)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	// runs the automaton a set of states at a time
+	public boolean matches(Iterable<? extends T> input) {
+		BitSet current = new BitSet(stateCount());
+		BitSet next = new BitSet(stateCount());
+		current.set(start);
+		for (T symbol : input) {
+			final int atom = atomId(symbol);
+			if (atom < 0)
+				return false;
+			next.clear();
+			for (int s = current.nextSetBit(0); s >= 0; s = current.nextSetBit(s + 1)) {
+				for (int e = edgesStart(s, atom); e < edgeOffsets[s + 1] && edgeAtoms[e] == atom; ++e) {
+					next.set(edgeTargets[e]);
+				}
+			}
+			if (next.isEmpty())
+				return false;
+			final BitSet swap = current;
+			current = next;
+			next = swap;
+		}
+		for (int s = current.nextSetBit(0); s >= 0; s = current.nextSetBit(s + 1)) {
+			if (accepting[s])
+				return true;
+		}
+		return false;
+	}
+
+	// a deterministic automaton for the same language, whose states are
+	// only worked out as matching reaches them, see LazyDfa
+	public LazyDfa<T> lazyDfa(int maxStates) {
+		return new LazyDfa<T>(this, maxStates);
+	}
+
+	// a deterministic automaton for the same language, with every state
+	// worked out up front, see Dfa. throws an IllegalArgumentException if
+	// it would have more than maxStates states
+	public Dfa<T> dfa(int maxStates) {
+		return Dfa.determinize(this, maxStates);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(stateCount()).append(" states, start ").append(start).append('\n');
+		for (int s = 0; s < stateCount(); ++s) {
+			sb.append(s).append(accepting[s] ? " (accepting):" : ":");
+			for (int e = edgeOffsets[s]; e < edgeOffsets[s + 1]; ++e) {
+				sb.append(' ').append(atoms.get(edgeAtoms[e])).append("->").append(edgeTargets[e]);
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,212 @@
+package algebraparsing.Automata;
+
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// matches long inputs of atom ids against a Dfa on several cores. a run of
+// the dfa over a piece of input is a function from states to states, and
+// running over two pieces in turn is the composition of their functions, so
+// the input is cut into chunks, the function of every chunk is worked out
+// in parallel, and the functions are composed in order at the end.
+//
+// a chunk's function is worked out by running the dfa from all its start
+// states at once. runs that reach the same state go the same way from then
+// on, so they're merged, and most dfas soon leave only one or two runs
+// going. when the dfa has more than maxPaths states, running from all of
+// them is too much, so each chunk only runs from the states the end of the
+// chunk before it can leave the dfa in, found by running the last LOOKBACK
+// atoms of that chunk from every state. if even those are more than
+// maxPaths, the chunk is left to be run from its actual start state when
+// the functions are composed, like a failed speculation.
+//
+// the input is an IntBuffer, so the atom ids can come straight from a
+// mapped file, and it's only read. instances are immutable and can be
+// shared between threads.
+public final class ParallelDfaMatcher<T> {
+
+	public static final int DEFAULT_MAX_PATHS = 64;
+	public static final int MIN_CHUNK_SIZE = 1 << 16;
+	// how many atoms before a chunk are looked at to narrow down its start states
+	private static final int LOOKBACK = 256;
+
+	private final Dfa<T> dfa;
+	private final ExecutorService executor;
+	private final int parallelism;
+	private final int maxPaths;
+
+	public ParallelDfaMatcher(Dfa<T> dfa, ExecutorService executor, int parallelism, int maxPaths) {
+		if (dfa == null || executor == null)
+			throw new IllegalArgumentException("dfa and executor must not be null");
+		if (parallelism < 1 || maxPaths < 1)
+			throw new IllegalArgumentException("parallelism and maxPaths must be positive");
+		this.dfa = dfa;
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.maxPaths = maxPaths;
+	}
+
+	// on the common fork join pool
+	public static <T> ParallelDfaMatcher<T> of(Dfa<T> dfa) {
+		return new ParallelDfaMatcher<T>(dfa, ForkJoinPool.commonPool(),
+				ForkJoinPool.getCommonPoolParallelism(), DEFAULT_MAX_PATHS);
+	}
+
+	public Dfa<T> dfa() { return dfa; }
+
+	public boolean matches(int[] atoms) {
+		return matches(IntBuffer.wrap(atoms));
+	}
+
+	// whether the atoms from the position to the limit of the buffer match
+	public boolean matches(IntBuffer atoms) {
+		return dfa.isAccepting(run(dfa.start(), atoms));
+	}
+
+	// the state the dfa is in after running from the given one over the
+	// atoms from the position to the limit of the buffer
+	public int run(int state, IntBuffer atoms) {
+		final IntBuffer input = atoms.slice();
+		final int length = input.limit();
+		final int chunkSize = Math.max(MIN_CHUNK_SIZE, (int) Math.min(Integer.MAX_VALUE,
+				((long) length + 4L * parallelism - 1) / (4L * parallelism)));
+		final int chunks = (int) (((long) length + chunkSize - 1) / chunkSize);
+		// on one core the chunk functions would only be extra work
+		if (chunks <= 1 || parallelism == 1)
+			return runFrom(state, input, 0, length);
+
+		final List<Callable<ChunkFunction>> tasks = new ArrayList<Callable<ChunkFunction>>();
+		for (int c = 0; c < chunks; ++c) {
+			final int from = c * chunkSize;
+			final int to = (int) Math.min(length, (long) from + chunkSize);
+			final boolean first = c == 0;
+			final int initial = state;
+			tasks.add(new Callable<ChunkFunction>() {
+				@Override
+				public ChunkFunction call() {
+					return chunkFunction(first ? new int[] { initial } : startStates(input, from), input, from, to);
+				}
+			});
+		}
+		final List<Future<ChunkFunction>> results;
+		try {
+			results = executor.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while matching", e);
+		}
+
+		for (int c = 0; c < chunks && state != Dfa.DEAD; ++c) {
+			final ChunkFunction function;
+			try {
+				function = results.get(c).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted while matching", e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("matching a chunk failed", e.getCause());
+			}
+			final int at = Arrays.binarySearch(function.from, state);
+			if (at >= 0) {
+				state = function.to[at];
+			} else {
+				final int from = c * chunkSize;
+				state = runFrom(state, input, from, (int) Math.min(length, (long) from + chunkSize));
+			}
+		}
+		return state;
+	}
+
+	// the end state of a chunk for each of some start states, from sorted
+	private static final class ChunkFunction {
+		final int[] from;
+		final int[] to;
+
+		ChunkFunction(int[] from, int[] to) {
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	// the states a chunk starting at from might start in, sorted, or none
+	// if there are too many to run from
+	private int[] startStates(IntBuffer input, int from) {
+		final int[] all = new int[dfa.stateCount()];
+		for (int s = 0; s < all.length; ++s) {
+			all[s] = s;
+		}
+		if (all.length <= maxPaths)
+			return all;
+		final ChunkFunction lookback = chunkFunction(all, input, Math.max(0, from - LOOKBACK), from);
+		final int[] ends = lookback.to.clone();
+		Arrays.sort(ends);
+		int n = 0;
+		for (int i = 0; i < ends.length; ++i) {
+			if (n == 0 || ends[i] != ends[n - 1])
+				ends[n++] = ends[i];
+		}
+		return n <= maxPaths ? Arrays.copyOf(ends, n) : new int[0];
+	}
+
+	// runs from all the start states at once, merging runs that meet
+	private ChunkFunction chunkFunction(int[] starts, IntBuffer input, int from, int to) {
+		final int n = starts.length;
+		// the current state of each distinct run, and which run each
+		// start state is on
+		final int[] paths = starts.clone();
+		final int[] pathOf = new int[n];
+		for (int i = 0; i < n; ++i) {
+			pathOf[i] = i;
+		}
+		int live = n;
+		final int[] seen = new int[dfa.stateCount()];
+		final int[] seenPath = new int[dfa.stateCount()];
+		final int[] merged = new int[n];
+		int generation = 0;
+
+		int i = from;
+		for (; i < to && live > 1; ++i) {
+			final int atom = input.get(i);
+			++generation;
+			int distinct = 0;
+			boolean merging = false;
+			for (int p = 0; p < live; ++p) {
+				final int state = dfa.step(paths[p], atom);
+				if (seen[state] == generation) {
+					merged[p] = seenPath[state];
+					merging = true;
+				} else {
+					seen[state] = generation;
+					seenPath[state] = distinct;
+					merged[p] = distinct;
+					paths[distinct++] = state;
+				}
+			}
+			if (merging) {
+				for (int k = 0; k < n; ++k) {
+					pathOf[k] = merged[pathOf[k]];
+				}
+				live = distinct;
+			}
+		}
+		if (live == 1)
+			paths[0] = runFrom(paths[0], input, i, to);
+
+		final int[] ends = new int[n];
+		for (int k = 0; k < n; ++k) {
+			ends[k] = paths[pathOf[k]];
+		}
+		return new ChunkFunction(starts, ends);
+	}
+
+	private int runFrom(int state, IntBuffer input, int from, int to) {
+		for (int i = from; i < to && state != Dfa.DEAD; ++i) {
+			state = dfa.step(state, input.get(i));
+		}
+		return state;
+	}
+}
@@ -0,0 +1,158 @@
+package algebraparsing.Automata;
+
+import java.util.*;
+
+import algebraparsing.OutputRope;
+import algebraparsing.OutputSink;
+import algebraparsing.Terminal;
+
+// runs a ThompsonProgram on input terminals without backtracking. every
+// thread of the nfa is advanced in lockstep, one input terminal at a time,
+// and a thread reaching an instruction another thread has already reached
+// in the same step is dropped, so there are never more threads than
+// instructions and a translation takes O(input * program) time.
+//
+// each thread carries the outputs it has emitted, as an OutputRope sharing
+// its beginning with those of the threads it split from. when the input is
+// ambiguous the thread with priority wins: the earlier alternative of a
+// union, and another iteration of a closure over leaving it.
+//
+// the thread lists are allocated once, for the size of the program, so a
+// vm is not safe to share between threads, but one can translate any
+// number of inputs in turn.
+public final class PikeVm {
+
+	// instructions in the order their threads were added, with the
+	// outputs of each thread
+	private static final class ThreadList {
+		final int[] pcs;
+		final OutputRope[] emitted;
+		int size = 0;
+
+		ThreadList(int capacity) {
+			this.pcs = new int[capacity];
+			this.emitted = new OutputRope[capacity];
+		}
+
+		void clear() {
+			Arrays.fill(emitted, 0, size, null);
+			size = 0;
+		}
+	}
+
+	private final ThompsonProgram program;
+	private ThreadList current;
+	private ThreadList next;
+	// the step in which each instruction was last reached
+	private final long[] reached;
+	private long step = 0;
+	// for following splits and emits without recursion
+	private final int[] pendingPcs;
+	private final OutputRope[] pendingEmitted;
+
+	public PikeVm(ThompsonProgram program) {
+		if (program == null)
+			throw new IllegalArgumentException("program must not be null");
+		this.program = program;
+		this.current = new ThreadList(program.size());
+		this.next = new ThreadList(program.size());
+		this.reached = new long[program.size()];
+		Arrays.fill(reached, -1);
+		// only splits push, and each is followed at most once per step
+		this.pendingPcs = new int[program.size() + 1];
+		this.pendingEmitted = new OutputRope[program.size() + 1];
+	}
+
+	public ThompsonProgram program() {
+		return program;
+	}
+
+	// the output terminals of the translation of the whole input,
+	// or null if the input doesn't match
+	public List<Terminal> translate(Iterable<Terminal> input) {
+		final OutputRope ret = run(input);
+		return ret == null ? null : ret.toList();
+	}
+
+	// writes the translation of the whole input to the sink and flushes
+	// it, or returns false without writing anything if the input doesn't
+	// match
+	public boolean translate(Iterable<Terminal> input, OutputSink output) {
+		final OutputRope ret = run(input);
+		if (ret == null)
+			return false;
+		ret.writeTo(output);
+		output.flush();
+		return true;
+	}
+
+	private OutputRope run(Iterable<Terminal> input) {
+		current.clear();
+		++step;
+		addThread(current, program.start(), OutputRope.empty());
+		for (Terminal terminal : input) {
+			final int id = program.terminalId(terminal);
+			if (id < 0) {
+				current.clear();
+				return null;
+			}
+			next.clear();
+			++step;
+			for (int t = 0; t < current.size; ++t) {
+				final int pc = current.pcs[t];
+				if (program.op(pc) == ThompsonProgram.TERMINAL && program.arg1(pc) == id)
+					addThread(next, program.arg2(pc), current.emitted[t]);
+			}
+			final ThreadList swap = current;
+			current = next;
+			next = swap;
+			if (current.size == 0)
+				return null;
+		}
+		// threads are in priority order, so the first to accept wins
+		for (int t = 0; t < current.size; ++t) {
+			if (program.op(current.pcs[t]) == ThompsonProgram.ACCEPT) {
+				final OutputRope ret = current.emitted[t];
+				current.clear();
+				return ret;
+			}
+		}
+		current.clear();
+		return null;
+	}
+
+	// follows splits and emits from pc, adding the threads that wait for
+	// input or accept to the list in priority order
+	private void addThread(ThreadList list, int pc, OutputRope emitted) {
+		int pending = 0;
+		pendingPcs[pending] = pc;
+		pendingEmitted[pending] = emitted;
+		++pending;
+		while (pending > 0) {
+			--pending;
+			int at = pendingPcs[pending];
+			OutputRope out = pendingEmitted[pending];
+			pendingEmitted[pending] = null;
+			while (reached[at] != step) {
+				reached[at] = step;
+				final int op = program.op(at);
+				if (op == ThompsonProgram.SPLIT) {
+					pendingPcs[pending] = program.arg2(at);
+					pendingEmitted[pending] = out;
+					++pending;
+					at = program.arg1(at);
+				} else if (op == ThompsonProgram.EMIT) {
+					out = out.append(program.emission(program.arg1(at)));
+					at = program.arg2(at);
+				} else {
+					if (op != ThompsonProgram.FAIL) {
+						list.pcs[list.size] = at;
+						list.emitted[list.size] = out;
+						++list.size;
+					}
+					break;
+				}
+			}
+		}
+	}
+}
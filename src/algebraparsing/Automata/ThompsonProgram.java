@@ -0,0 +1,208 @@
+package algebraparsing.Automata;
+
+import java.util.*;
+
+import algebraparsing.Nonterminal;
+import algebraparsing.Terminal;
+import algebraparsing.TerminalOrNonterminal;
+import algebraparsing.Translation;
+import algebraparsing.KleeneAlgebra.RegularExpression;
+
+// a Thompson NFA for a translation regexp, as a program for a PikeVm. the
+// instructions are
+//   TERMINAL t, next   consume the input terminal t
+//   EMIT o, next       emit the o'th list of output terminals
+//   SPLIT x, y         go on at both x and y, x taking priority
+//   FAIL               no way on
+//   ACCEPT             the translation is complete
+// a translation atom becomes a TERMINAL for each of its inputs followed by
+// an EMIT of its outputs, a union a SPLIT per alternative and a closure a
+// SPLIT looping back, preferring another iteration.
+//
+// the program is regular, so nonterminals are inlined from their expansions,
+// and one that turns up again inside its own expansion can't be compiled.
+// instances are immutable and can be shared between threads.
+public final class ThompsonProgram {
+
+	public static final int TERMINAL = 0;
+	public static final int EMIT = 1;
+	public static final int SPLIT = 2;
+	public static final int FAIL = 3;
+	public static final int ACCEPT = 4;
+
+	private final int[] ops;
+	private final int[] args1;
+	private final int[] args2;
+	private final int start;
+	private final Map<Terminal, Integer> terminalIds;
+	private final List<List<Terminal>> emissions;
+
+	private ThompsonProgram(Compiler compiler, int start) {
+		this.ops = Arrays.copyOf(compiler.ops, compiler.size);
+		this.args1 = Arrays.copyOf(compiler.args1, compiler.size);
+		this.args2 = Arrays.copyOf(compiler.args2, compiler.size);
+		this.start = start;
+		this.terminalIds = new HashMap<Terminal, Integer>(compiler.terminalIds);
+		this.emissions = Collections.unmodifiableList(new ArrayList<List<Terminal>>(compiler.emissions));
+	}
+
+	public static ThompsonProgram compile(RegularExpression<TerminalOrNonterminal<Translation>> regexp) {
+		return compile(regexp, Collections.<Nonterminal, RegularExpression<TerminalOrNonterminal<Translation>>>emptyMap());
+	}
+
+	public static ThompsonProgram compile(RegularExpression<TerminalOrNonterminal<Translation>> regexp,
+			Map<Nonterminal, RegularExpression<TerminalOrNonterminal<Translation>>> expansions) {
+		final Compiler compiler = new Compiler(expansions);
+		final int accept = compiler.add(ACCEPT, 0, 0);
+		final int start = compiler.compile(regexp, accept);
+		return new ThompsonProgram(compiler, start);
+	}
+
+	public int size() { return ops.length; }
+	public int start() { return start; }
+	public int op(int pc) { return ops[pc]; }
+	public int arg1(int pc) { return args1[pc]; }
+	public int arg2(int pc) { return args2[pc]; }
+
+	// -1 for a terminal the program never consumes
+	public int terminalId(Terminal terminal) {
+		final Integer ret = terminalIds.get(terminal);
+		return ret == null ? -1 : ret;
+	}
+
+	public List<Terminal> emission(int id) {
+		return emissions.get(id);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("start ").append(start).append('\n');
+		for (int pc = 0; pc < ops.length; ++pc) {
+			sb.append(pc).append(": ");
+			switch (ops[pc]) {
+			case TERMINAL: sb.append("terminal #").append(args1[pc]).append(", ").append(args2[pc]); break;
+			case EMIT: sb.append("emit ").append(emissions.get(args1[pc])).append(", ").append(args2[pc]); break;
+			case SPLIT: sb.append("split ").append(args1[pc]).append(", ").append(args2[pc]); break;
+			case FAIL: sb.append("fail"); break;
+			default: sb.append("accept");
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static final class Compiler {
+		private final Map<Nonterminal, RegularExpression<TerminalOrNonterminal<Translation>>> expansions;
+		// nonterminals being inlined, to catch recursion
+		private final Set<Nonterminal> inlining = new HashSet<Nonterminal>();
+		private final Map<Terminal, Integer> terminalIds = new HashMap<Terminal, Integer>();
+		private final List<List<Terminal>> emissions = new ArrayList<List<Terminal>>();
+		private final Map<List<Terminal>, Integer> emissionIds = new HashMap<List<Terminal>, Integer>();
+		private int[] ops = new int[16];
+		private int[] args1 = new int[16];
+		private int[] args2 = new int[16];
+		private int size = 0;
+
+		Compiler(Map<Nonterminal, RegularExpression<TerminalOrNonterminal<Translation>>> expansions) {
+			this.expansions = expansions;
+		}
+
+		int add(int op, int arg1, int arg2) {
+			if (size == ops.length) {
+				ops = Arrays.copyOf(ops, 2 * size);
+				args1 = Arrays.copyOf(args1, 2 * size);
+				args2 = Arrays.copyOf(args2, 2 * size);
+			}
+			ops[size] = op;
+			args1[size] = arg1;
+			args2[size] = arg2;
+			return size++;
+		}
+
+		// compiles the regexp to continue at next once it has matched,
+		// and returns where it starts. code is generated back to front,
+		// and chains are looped along rather than recursed into
+		int compile(RegularExpression<TerminalOrNonterminal<Translation>> regexp, int next) {
+			switch (regexp.kind()) {
+			case ATOM:
+				return compileAtom(regexp.atomValue(), next);
+			case EMPTY_STRING:
+				return next;
+			case EMPTY:
+				return add(FAIL, 0, 0);
+			case CLOSURE: {
+				// the body may grow the arrays, so it's compiled before
+				// the loop is patched
+				final int loop = add(SPLIT, 0, next);
+				final int body = compile(regexp.children().get(0), loop);
+				args1[loop] = body;
+				return loop;
+			}
+			case CAT: {
+				final List<RegularExpression<TerminalOrNonterminal<Translation>>> factors = chain(regexp);
+				int ret = next;
+				for (int i = factors.size() - 1; i >= 0; --i) {
+					ret = compile(factors.get(i), ret);
+				}
+				return ret;
+			}
+			case UNION: {
+				final List<RegularExpression<TerminalOrNonterminal<Translation>>> summands = chain(regexp);
+				int ret = compile(summands.get(summands.size() - 1), next);
+				for (int i = summands.size() - 2; i >= 0; --i) {
+					ret = add(SPLIT, compile(summands.get(i), next), ret);
+				}
+				return ret;
+			}
+			default:
+				throw new RuntimeException("unknown kind " + regexp.kind());
+			}
+		}
+
+		private int compileAtom(TerminalOrNonterminal<Translation> atom, int next) {
+			if (!atom.isTerminal()) {
+				final Nonterminal nonterminal = atom.asNonterminal();
+				final RegularExpression<TerminalOrNonterminal<Translation>> expansion = expansions.get(nonterminal);
+				if (expansion == null)
+					throw new IllegalArgumentException("no expansion for " + nonterminal);
+				if (!inlining.add(nonterminal))
+					throw new IllegalArgumentException(nonterminal + " is recursive, the translation isn't regular");
+				final int ret = compile(expansion, next);
+				inlining.remove(nonterminal);
+				return ret;
+			}
+			final Translation translation = atom.asTerminal();
+			int ret = next;
+			if (!translation.getOutputs().isEmpty()) {
+				Integer emission = emissionIds.get(translation.getOutputs());
+				if (emission == null) {
+					emission = emissions.size();
+					emissions.add(translation.getOutputs());
+					emissionIds.put(translation.getOutputs(), emission);
+				}
+				ret = add(EMIT, emission, ret);
+			}
+			final List<Terminal> inputs = translation.getInputs();
+			for (int i = inputs.size() - 1; i >= 0; --i) {
+				Integer terminal = terminalIds.get(inputs.get(i));
+				if (terminal == null) {
+					terminal = terminalIds.size();
+					terminalIds.put(inputs.get(i), terminal);
+				}
+				ret = add(TERMINAL, terminal, ret);
+			}
+			return ret;
+		}
+
+		private static <T> List<RegularExpression<T>> chain(RegularExpression<T> regexp) {
+			final List<RegularExpression<T>> ret = new ArrayList<RegularExpression<T>>();
+			final RegularExpression.Kind kind = regexp.kind();
+			while (regexp.kind() == kind) {
+				ret.add(regexp.children().get(0));
+				regexp = regexp.children().get(1);
+			}
+			ret.add(regexp);
+			return ret;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package algebraparsing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// writes output terminals into a ByteBuffer as their utf-8 text, each
+// followed by a separator. given a channel, the buffer is written out to it
+// whenever it fills up and on flush(), so the output can be any length,
+// otherwise a terminal that doesn't fit is a BufferOverflowException, and
+// the buffer is left holding the terminals before it. the bytes of
+// each terminal are only worked out the first time it's emitted.
+// errors writing to the channel are thrown as UncheckedIOExceptions.
+//
+// not safe to share between threads.
+public final class ByteBufferOutputSink implements OutputSink {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+	// past this many distinct terminals their bytes aren't kept
+	private static final int MAX_CACHED = 1 << 12;
+
+	private final ByteBuffer buffer;
+	private final WritableByteChannel channel;
+	private final byte[] separator;
+	private final Map<Terminal, byte[]> encoded = new HashMap<Terminal, byte[]>();
+	private long written = 0;
+
+	public ByteBufferOutputSink(ByteBuffer buffer, String separator) {
+		this(buffer, null, separator);
+	}
+
+	public ByteBufferOutputSink(WritableByteChannel channel, String separator) {
+		this(ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE), channel, separator);
+		if (channel == null)
+			throw new IllegalArgumentException("channel must not be null");
+	}
+
+	public ByteBufferOutputSink(ByteBuffer buffer, WritableByteChannel channel, String separator) {
+		if (buffer == null || separator == null)
+			throw new IllegalArgumentException("buffer and separator must not be null");
+		if (channel != null && buffer.capacity() == 0)
+			throw new IllegalArgumentException("can't write through an empty buffer");
+		this.buffer = buffer;
+		this.channel = channel;
+		this.separator = separator.getBytes(StandardCharsets.UTF_8);
+	}
+
+	// bytes emitted so far, whether or not they've been written out
+	public long bytesEmitted() {
+		return written;
+	}
+
+	@Override
+	public void emit(Terminal terminal) {
+		byte[] bytes = encoded.get(terminal);
+		if (bytes == null) {
+			bytes = terminal.getText().getBytes(StandardCharsets.UTF_8);
+			if (encoded.size() < MAX_CACHED)
+				encoded.put(terminal, bytes);
+		}
+		// without a channel nothing can make room, so a terminal that
+		// doesn't fit is refused whole and the buffer stays at a boundary
+		if (channel == null && buffer.remaining() < bytes.length + separator.length)
+			throw new BufferOverflowException();
+		put(bytes);
+		put(separator);
+	}
+
+	@Override
+	public void emit(List<Terminal> terminals) {
+		for (Terminal terminal : terminals) {
+			emit(terminal);
+		}
+	}
+
+	@Override
+	public void flush() {
+		if (channel != null)
+			drain();
+	}
+
+	private void put(byte[] bytes) {
+		int offset = 0;
+		while (offset < bytes.length) {
+			// only with a channel, emit() made sure of room otherwise
+			if (!buffer.hasRemaining())
+				drain();
+			final int n = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, n);
+			offset += n;
+		}
+		written += bytes.length;
+	}
+
+	private void drain() {
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			buffer.compact();
+		}
+	}
+}
@@ -3,6 +3,7 @@ package algebraparsing;
 import java.util.*;
 
 import algebraparsing.KleeneAlgebra.KleeneAlgebraElement;
+import algebraparsing.KleeneAlgebra.KleeneVector;
 
 // object describes a mapping of a finite set of objects of type S
 // to arguments in T, where T is a Kleene algebra
@@ -41,4 +42,26 @@ public class FreeKleeneModuleElement<S, T extends KleeneAlgebraElement<T>> {
 	public Set<S> getDomain() {
 		return this.data.keySet();
 	}
+	
+	// the same mapping as a dense vector, where each member of the domain
+	// goes to the position given by indexMap (e.g. a grammar's nonterminalIndexMap),
+	// positions that nothing maps to are zero
+	public KleeneVector<T> toDense(Map<S, Integer> indexMap, T zero) {
+		final KleeneVector<T> ret = new KleeneVector<T>(indexMap.size(), zero);
+		for (Map.Entry<S, T> entry : data.entrySet()) {
+			if (!indexMap.containsKey(entry.getKey()))
+				throw new IllegalArgumentException(entry.getKey() + " has no index");
+			ret.set(indexMap.get(entry.getKey()), entry.getValue());
+		}
+		return ret;
+	}
+	
+	public static <S, T extends KleeneAlgebraElement<T>> FreeKleeneModuleElement<S, T> fromDense(
+			Map<S, Integer> indexMap, KleeneVector<T> vector) {
+		final Map<S, T> data = new HashMap<S, T>();
+		for (Map.Entry<S, Integer> entry : indexMap.entrySet()) {
+			data.put(entry.getKey(), vector.get(entry.getValue()));
+		}
+		return new FreeKleeneModuleElement<S, T>(data);
+	}
 }
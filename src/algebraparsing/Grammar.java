@@ -3,7 +3,9 @@ package algebraparsing;
 import static algebraparsing.KleeneAlgebra.RegularExpression.*;
 
 import java.util.*;
+import java.util.function.Function;
 
+import algebraparsing.KleeneAlgebra.KleeneAlgebraElement;
 import algebraparsing.KleeneAlgebra.KleeneMatrix;
 import algebraparsing.KleeneAlgebra.RegularExpression;
 
@@ -22,6 +24,14 @@ public class Grammar<T, S> {
 		return startSymbol;
 	}
 	
+	public List<Production<T>> productions() {
+		return Collections.unmodifiableList(productions);
+	}
+	
+	public TerminalConsolidator<S, T> terminalConsolidator() {
+		return tc;
+	}
+	
 	public Grammar(Nonterminal startSymbol, List<Production<T>> productions, TerminalConsolidator<S, T> tc) {
 		if (startSymbol == null)
 			throw new RuntimeException("start symbol must not be null");
@@ -70,39 +80,31 @@ public class Grammar<T, S> {
 		return sb.toString();
 	}
 	
-	public MatrixVectorGrammar<S> asAffineEndomorphism() {
-		
+	// start symbol gets index 0, the rest are numbered in order of
+	// first appearance as a left hand side
+	private Map<Nonterminal, Integer> indexNonterminals() {
 		final Map<Nonterminal, Integer> nonterminalIndexMap = new HashMap<Nonterminal, Integer>();
 		nonterminalIndexMap.put(startSymbol, 0);
-		int numNonterminals = 1;
 		for (Production<T> production : this.productions) {
 			if (!nonterminalIndexMap.containsKey(production.nonterminal)) {
-				nonterminalIndexMap.put(production.nonterminal, numNonterminals);
-				++numNonterminals;
+				nonterminalIndexMap.put(production.nonterminal, nonterminalIndexMap.size());
 			}
 		}
+		return nonterminalIndexMap;
+	}
+	
+	public MatrixVectorGrammar<S> asAffineEndomorphism() {
 		
-		final List<List<RegularExpression<TerminalOrNonterminal<S>>>> matrixDat =
-				new ArrayList<List<RegularExpression<TerminalOrNonterminal<S>>>>();
-
-		for (int i = 0; i < numNonterminals; ++i) {
-			final List<RegularExpression<TerminalOrNonterminal<S>>> row =
-					new ArrayList<RegularExpression<TerminalOrNonterminal<S>>>();
-			for (int j = 0; j < numNonterminals; ++j) {
-				row.add(emptyRegexp());
-			}
-			matrixDat.add(row);
-		}
+		final Map<Nonterminal, Integer> nonterminalIndexMap = indexNonterminals();
+		final int numNonterminals = nonterminalIndexMap.size();
 		
-		final List<List<RegularExpression<TerminalOrNonterminal<S>>>> vectorDat =
-				new ArrayList<List<RegularExpression<TerminalOrNonterminal<S>>>>();
+		final KleeneMatrix.Builder<RegularExpression<TerminalOrNonterminal<S>>> matrixBuilder =
+				new KleeneMatrix.Builder<RegularExpression<TerminalOrNonterminal<S>>>(
+						numNonterminals, numNonterminals, RegularExpression.emptyRegexp(), RegularExpression.emptyString());
 		
-		for (int i = 0; i < numNonterminals; ++i) {
-			final List<RegularExpression<TerminalOrNonterminal<S>>> row =
-					new ArrayList<RegularExpression<TerminalOrNonterminal<S>>>();
-			row.add(emptyRegexp());
-			vectorDat.add(row);
-		}
+		final KleeneMatrix.Builder<RegularExpression<TerminalOrNonterminal<S>>> vectorBuilder =
+				new KleeneMatrix.Builder<RegularExpression<TerminalOrNonterminal<S>>>(
+						numNonterminals, 1, RegularExpression.emptyRegexp(), RegularExpression.emptyString());
 		
 		for (Production<T> production : this.productions) {
 			
@@ -138,40 +140,89 @@ public class Grammar<T, S> {
 			}
 			
 			//we turn the right hand side of the production into a regular expression
-			RegularExpression<TerminalOrNonterminal<S>> rhs = emptyString();
-			tc.asRegexpAndReset();
-			for (TerminalOrNonterminal<T> ton : tailOrWhole) {
-				if (ton.isTerminal()) {
-					tc.consolidateTerminal(ton.asTerminal());
-				} else {
-					// the same nonterminal, but of type TerminalOrNonterminal<S>
-					TerminalOrNonterminal<S> tonprime = TerminalOrNonterminal.fromNonterminal(ton.asNonterminal());
-					rhs = rhs.mul(tc.asRegexpAndReset().mul(RegularExpression.fromAtom(tonprime)));
-				}
-			}
-			rhs = rhs.mul(tc.asRegexpAndReset());
+			RegularExpression<TerminalOrNonterminal<S>> rhs = asRegexp(tailOrWhole);
 
 			//find destination index to add regexp into
 			int i = nonterminalIndexMap.get(production.nonterminal);
 			
 			if (initialNonterminal == null) {
 				//add into vector
-				final List<RegularExpression<TerminalOrNonterminal<S>>> row = vectorDat.get(i);
-				row.set(0, row.get(0).add(rhs));
+				vectorBuilder.addAt(i, 0, rhs);
 			} else {
 				//add into matrix
 				int j = nonterminalIndexMap.get(initialNonterminal);
-				final List<RegularExpression<TerminalOrNonterminal<S>>> row = matrixDat.get(i);
-				row.set(j, row.get(j).add(rhs));
+				matrixBuilder.addAt(i, j, rhs);
 			}
 		}
 		
 		return new MatrixVectorGrammar<S>(
 				nonterminalIndexMap,
-				new KleeneMatrix<RegularExpression<TerminalOrNonterminal<S>>>(
-						matrixDat, RegularExpression.emptyRegexp(), RegularExpression.emptyString()),
-				new KleeneMatrix<RegularExpression<TerminalOrNonterminal<S>>>(
-						vectorDat, RegularExpression.emptyRegexp(), RegularExpression.emptyString())
+				matrixBuilder.build(),
+				vectorBuilder.build()
 		);
 	}
+	
+	// the consolidator keeps state between calls, and may well be shared
+	// by grammars that are compiled on different threads
+	private RegularExpression<TerminalOrNonterminal<S>> asRegexp(List<TerminalOrNonterminal<T>> symbols) {
+		synchronized (tc) {
+			RegularExpression<TerminalOrNonterminal<S>> ret = emptyString();
+			tc.asRegexpAndReset();
+			for (TerminalOrNonterminal<T> ton : symbols) {
+				if (ton.isTerminal()) {
+					tc.consolidateTerminal(ton.asTerminal());
+				} else {
+					// the same nonterminal, but of type TerminalOrNonterminal<S>
+					TerminalOrNonterminal<S> tonprime = TerminalOrNonterminal.fromNonterminal(ton.asNonterminal());
+					ret = ret.mul(tc.asRegexpAndReset().mul(RegularExpression.fromAtom(tonprime)));
+				}
+			}
+			return ret.mul(tc.asRegexpAndReset());
+		}
+	}
+	
+	// interprets the grammar as a system of polynomial equations over K,
+	// with each nonterminal a variable and each terminal mapped to a constant.
+	// unlike asAffineEndomorphism() this doesn't care where nonterminals
+	// occur in a right hand side, and empty productions are just the constant one
+	public <K extends KleeneAlgebraElement<K>> PolynomialSystem<K> asPolynomialSystem(
+			Function<T, K> interpretation, K zero, K one) {
+		if (interpretation == null)
+			throw new IllegalArgumentException("interpretation must not be null");
+		
+		final Map<Nonterminal, Integer> nonterminalIndexMap = indexNonterminals();
+		
+		final List<List<PolynomialSystem.Monomial<K>>> polynomials =
+				new ArrayList<List<PolynomialSystem.Monomial<K>>>();
+		for (int i = 0; i < nonterminalIndexMap.size(); ++i) {
+			polynomials.add(new ArrayList<PolynomialSystem.Monomial<K>>());
+		}
+		
+		for (Production<T> production : this.productions) {
+			//runs of terminals between nonterminals are folded into a single constant
+			final List<K> constants = new ArrayList<K>();
+			final List<Integer> variables = new ArrayList<Integer>();
+			K constant = one;
+			for (TerminalOrNonterminal<T> ton : production.rhs) {
+				if (ton.isTerminal()) {
+					constant = constant.mul(interpretation.apply(ton.asTerminal()));
+				} else {
+					// the constructor checks this, but the production list
+					// isn't copied and may have changed since
+					final Integer variable = nonterminalIndexMap.get(ton.asNonterminal());
+					if (variable == null)
+						throw new IllegalArgumentException("nonterminal " + ton.asNonterminal()
+								+ " is used in " + production + " but has no production");
+					constants.add(constant);
+					variables.add(variable);
+					constant = one;
+				}
+			}
+			constants.add(constant);
+			polynomials.get(nonterminalIndexMap.get(production.nonterminal))
+					.add(new PolynomialSystem.Monomial<K>(constants, variables));
+		}
+		
+		return new PolynomialSystem<K>(nonterminalIndexMap, polynomials, zero, one);
+	}
 }
@@ -0,0 +1,165 @@
+package algebraparsing;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import algebraparsing.Grammar.TerminalConsolidator;
+
+// compiles translation grammars into ParseTables, caching the results so
+// that a grammar that's structurally the same as one compiled before
+// (same start symbol, same productions in the same order, same terminal
+// consolidator) gets the existing table.
+//
+// the cache holds tables up to a total tableSize(), past that the least
+// recently used ones are dropped. if several threads ask for the same
+// grammar at once only one of them compiles it, the rest wait for its result.
+public class GrammarCompiler {
+
+	private final long maxWeight;
+
+	// access ordered, so iteration starts at the least recently used entry
+	private final LinkedHashMap<GrammarKey, Entry> entries = new LinkedHashMap<GrammarKey, Entry>(16, 0.75f, true);
+	private long weight = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	private static class Entry {
+		final CompletableFuture<ParseTable> table = new CompletableFuture<ParseTable>();
+		// zero until the table is compiled
+		long weight = 0;
+	}
+
+	public GrammarCompiler(long maxWeight) {
+		if (maxWeight < 0)
+			throw new IllegalArgumentException("maximum weight must not be negative");
+		this.maxWeight = maxWeight;
+	}
+
+	public ParseTable compile(Grammar<InputOrOutputTerminal, Translation> grammar) {
+		if (grammar == null)
+			throw new IllegalArgumentException("grammar must not be null");
+
+		final GrammarKey key = new GrammarKey(grammar);
+		final Entry entry;
+		final boolean owner;
+		synchronized (this) {
+			final Entry existing = entries.get(key);
+			if (existing != null) {
+				++hits;
+				entry = existing;
+				owner = false;
+			} else {
+				++misses;
+				entry = new Entry();
+				entries.put(key, entry);
+				owner = true;
+			}
+		}
+
+		if (!owner) {
+			try {
+				return entry.table.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw e;
+			}
+		}
+
+		final ParseTable table;
+		try {
+			table = ParseTable.generate(TranslationAutomaton.fromGrammar(grammar));
+		} catch (RuntimeException | Error e) {
+			// don't cache failures, the next caller gets to try again
+			synchronized (this) {
+				entries.remove(key, entry);
+			}
+			entry.table.completeExceptionally(e);
+			throw e;
+		}
+		entry.table.complete(table);
+
+		synchronized (this) {
+			// might have been cleared while compiling
+			if (entries.get(key) == entry) {
+				entry.weight = table.tableSize();
+				weight += entry.weight;
+				evict();
+			}
+		}
+		return table;
+	}
+
+	private void evict() {
+		final Iterator<Entry> it = entries.values().iterator();
+		while (weight > maxWeight && it.hasNext()) {
+			final Entry entry = it.next();
+			// tables still being compiled have waiters, leave them be
+			if (!entry.table.isDone())
+				continue;
+			weight -= entry.weight;
+			it.remove();
+			++evictions;
+		}
+	}
+
+	public synchronized void clear() {
+		final Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			final Entry entry = it.next();
+			if (entry.table.isDone()) {
+				weight -= entry.weight;
+				it.remove();
+			}
+		}
+	}
+
+	public synchronized int size() { return entries.size(); }
+	public synchronized long weight() { return weight; }
+	public synchronized long hitCount() { return hits; }
+	public synchronized long missCount() { return misses; }
+	public synchronized long evictionCount() { return evictions; }
+
+	@Override
+	public synchronized String toString() {
+		return "GrammarCompiler(" + entries.size() + " tables, weight " + weight + "/" + maxWeight
+				+ ", " + hits + " hits, " + misses + " misses, " + evictions + " evictions)";
+	}
+
+	// a snapshot of the structure of a grammar, so later changes to the
+	// caller's production list don't affect the cache
+	private static final class GrammarKey {
+		private final Nonterminal startSymbol;
+		private final List<Production<InputOrOutputTerminal>> productions;
+		private final TerminalConsolidator<Translation, InputOrOutputTerminal> tc;
+		private final int hash;
+
+		GrammarKey(Grammar<InputOrOutputTerminal, Translation> grammar) {
+			this.startSymbol = grammar.startSymbol();
+			this.productions = new ArrayList<Production<InputOrOutputTerminal>>();
+			for (Production<InputOrOutputTerminal> production : grammar.productions()) {
+				this.productions.add(new Production<InputOrOutputTerminal>(production.nonterminal,
+						new ArrayList<TerminalOrNonterminal<InputOrOutputTerminal>>(production.rhs)));
+			}
+			// consolidators are compared by identity, there's no telling
+			// whether two different ones do the same thing
+			this.tc = grammar.terminalConsolidator();
+			this.hash = (31 * startSymbol.hashCode() + productions.hashCode()) * 31 + System.identityHashCode(tc);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof GrammarKey)) return false;
+			GrammarKey k = (GrammarKey) other;
+			return this.hash == k.hash && this.tc == k.tc
+					&& this.startSymbol.equals(k.startSymbol) && this.productions.equals(k.productions);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
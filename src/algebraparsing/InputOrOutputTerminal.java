@@ -25,4 +25,17 @@ public class InputOrOutputTerminal {
 	public static InputOrOutputTerminal outputTerminal(Terminal terminal) {
 		return new InputOrOutputTerminal(terminal, false);
 	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if (other == null) return false;
+		if (!(other instanceof InputOrOutputTerminal)) return false;
+		InputOrOutputTerminal t = (InputOrOutputTerminal) other;
+		return this.isInputTerminal == t.isInputTerminal && this.terminal.equals(t.terminal);
+	}
+	
+	@Override
+	public int hashCode() {
+		return isInputTerminal ? terminal.hashCode() : ~terminal.hashCode();
+	}
 }
@@ -0,0 +1,179 @@
+package algebraparsing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+// splits utf-8 text into terminals, each terminal matching its own text, and
+// passes on their ids. the texts of the terminals are put in a trie, which
+// is a dfa over bytes, and at every position the longest terminal that
+// matches there is taken; where none does, ascii whitespace is skipped and
+// anything else is an error. so "sym" lexes as one terminal even with "s" a
+// terminal too, and finding it takes at most as many steps as the longest
+// terminal is long.
+//
+// the trie is flattened into an int array, with the bytes that occur in no
+// terminal sharing one column, and the input is read straight out of a
+// ByteBuffer, so lexing a mapped file allocates nothing per terminal.
+// instances are immutable and can be shared between threads.
+public final class KeywordLexer {
+
+	private static final int NO_NODE = 0;
+
+	private final List<Terminal> terminals;
+	// the column of each byte value, 0 for bytes in no terminal
+	private final int[] columns;
+	private final int columnCount;
+	// the child of node n on column c at n * columnCount + c, NO_NODE for
+	// none (the root, node 0, is nobody's child)
+	private final int[] children;
+	// the terminal whose text ends at each node, -1 for none
+	private final int[] accepting;
+
+	private KeywordLexer(List<Terminal> terminals) {
+		this.terminals = Collections.unmodifiableList(new ArrayList<Terminal>(terminals));
+		final byte[][] texts = new byte[terminals.size()][];
+		int bytes = 0;
+		this.columns = new int[256];
+		int columnCount = 1;
+		for (int i = 0; i < texts.length; ++i) {
+			texts[i] = terminals.get(i).getText().getBytes(StandardCharsets.UTF_8);
+			if (texts[i].length == 0)
+				throw new IllegalArgumentException("can't lex the empty terminal " + terminals.get(i));
+			bytes += texts[i].length;
+			for (byte b : texts[i]) {
+				if (columns[b & 0xff] == 0)
+					columns[b & 0xff] = columnCount++;
+			}
+		}
+		this.columnCount = columnCount;
+
+		final int[] children = new int[(bytes + 1) * columnCount];
+		final int[] accepting = new int[bytes + 1];
+		Arrays.fill(accepting, -1);
+		int nodes = 1;
+		for (int i = 0; i < texts.length; ++i) {
+			int node = 0;
+			for (byte b : texts[i]) {
+				final int at = node * columnCount + columns[b & 0xff];
+				if (children[at] == NO_NODE)
+					children[at] = nodes++;
+				node = children[at];
+			}
+			if (accepting[node] >= 0)
+				throw new IllegalArgumentException("duplicate terminal " + terminals.get(i));
+			accepting[node] = i;
+		}
+		this.children = Arrays.copyOf(children, nodes * columnCount);
+		this.accepting = Arrays.copyOf(accepting, nodes);
+	}
+
+	// terminal ids are positions in the list
+	public static KeywordLexer forTerminals(List<Terminal> terminals) {
+		return new KeywordLexer(terminals);
+	}
+
+	// the input terminals of a translation grammar, numbered in order of
+	// first occurrence
+	public static KeywordLexer forGrammar(Grammar<InputOrOutputTerminal, ?> grammar) {
+		final Set<Terminal> terminals = new LinkedHashSet<Terminal>();
+		for (Production<InputOrOutputTerminal> production : grammar.productions()) {
+			for (TerminalOrNonterminal<InputOrOutputTerminal> symbol : production.rhs) {
+				if (symbol.isTerminal() && symbol.asTerminal().isInput())
+					terminals.add(symbol.asTerminal().getTerminal());
+			}
+		}
+		return new KeywordLexer(new ArrayList<Terminal>(terminals));
+	}
+
+	// the terminals of a parse table with the table's ids, so the ids can
+	// go straight to a TableParser
+	public static KeywordLexer forParseTable(ParseTable table) {
+		final List<Terminal> terminals = new ArrayList<Terminal>();
+		for (int id = 0; id < table.terminalCount(); ++id) {
+			terminals.add(table.terminal(id));
+		}
+		return new KeywordLexer(terminals);
+	}
+
+	public int terminalCount() { return terminals.size(); }
+	public Terminal terminal(int id) { return terminals.get(id); }
+	public List<Terminal> terminals() { return terminals; }
+
+	// lexes the bytes from the position to the limit of the buffer, which
+	// is only read, passing the terminal ids to the output, and returns
+	// how many there were
+	public long lex(ByteBuffer input, IntConsumer output) {
+		final int limit = input.limit();
+		long count = 0;
+		int i = input.position();
+		while (i < limit) {
+			// the longest match from i
+			int node = 0;
+			int matched = -1;
+			int matchEnd = i;
+			for (int j = i; j < limit; ++j) {
+				node = children[node * columnCount + columns[input.get(j) & 0xff]];
+				if (node == NO_NODE)
+					break;
+				if (accepting[node] >= 0) {
+					matched = accepting[node];
+					matchEnd = j + 1;
+				}
+			}
+			if (matched >= 0) {
+				output.accept(matched);
+				++count;
+				i = matchEnd;
+			} else if (isWhitespace(input.get(i))) {
+				++i;
+			} else {
+				throw new RuntimeException("no terminal matches at byte " + (i - input.position())
+						+ ", expected one of " + terminals);
+			}
+		}
+		return count;
+	}
+
+	// the terminal ids of the bytes from the position to the limit of the
+	// buffer, which is only read
+	public int[] lex(ByteBuffer input) {
+		final IdList ids = new IdList();
+		lex(input, ids);
+		return Arrays.copyOf(ids.ids, ids.size);
+	}
+
+	public int[] lex(Path path) throws IOException {
+		final MappedByteBuffer file;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(path + " is too large to map");
+			// the mapping stays valid after the channel is closed
+			file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		return lex(file);
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+	}
+
+	// a growing array of ids
+	private static final class IdList implements IntConsumer {
+		int[] ids = new int[64];
+		int size = 0;
+
+		@Override
+		public void accept(int id) {
+			if (size == ids.length)
+				ids = Arrays.copyOf(ids, 2 * size);
+			ids[size++] = id;
+		}
+	}
+}
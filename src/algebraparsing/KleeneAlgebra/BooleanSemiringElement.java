@@ -0,0 +1,55 @@
+package algebraparsing.KleeneAlgebra;
+
+// the two element boolean semiring, with or as addition and and as
+// multiplication, solving a grammar over it decides which nonterminals
+// derive anything at all
+public final class BooleanSemiringElement implements KleeneAlgebraElement<BooleanSemiringElement> {
+
+	private static final BooleanSemiringElement FALSE = new BooleanSemiringElement(false);
+	private static final BooleanSemiringElement TRUE = new BooleanSemiringElement(true);
+
+	private final boolean value;
+
+	private BooleanSemiringElement(boolean value) {
+		this.value = value;
+	}
+
+	public static BooleanSemiringElement of(boolean value) {
+		return value ? TRUE : FALSE;
+	}
+
+	public static BooleanSemiringElement zero() { return FALSE; }
+	public static BooleanSemiringElement one() { return TRUE; }
+
+	public boolean getValue() { return value; }
+
+	@Override
+	public BooleanSemiringElement add(BooleanSemiringElement el) {
+		return of(this.value || el.value);
+	}
+
+	@Override
+	public BooleanSemiringElement mul(BooleanSemiringElement el) {
+		return of(this.value && el.value);
+	}
+
+	@Override
+	public BooleanSemiringElement close() {
+		return TRUE;
+	}
+
+	@Override
+	public String toString() {
+		return Boolean.toString(value);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof BooleanSemiringElement && ((BooleanSemiringElement) other).value == this.value;
+	}
+
+	@Override
+	public int hashCode() {
+		return Boolean.hashCode(value);
+	}
+}
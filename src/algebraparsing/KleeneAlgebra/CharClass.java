@@ -0,0 +1,199 @@
+package algebraparsing.KleeneAlgebra;
+
+import java.util.*;
+
+// a set of code points, as sorted disjoint ranges. used as the atom of a
+// regexp it stands for any one of its code points, so a class like [a-z]
+// is a single atom rather than a union of 26, and a MintermPartition
+// splits the alphabet so derivatives are taken once per class of code
+// points that no atom tells apart.
+public final class CharClass implements Comparable<CharClass> {
+
+	public static final int MAX_CODE_POINT = Character.MAX_CODE_POINT;
+
+	private static final CharClass NONE = new CharClass(new int[0]);
+	private static final CharClass ANY = new CharClass(new int[] { 0, MAX_CODE_POINT });
+
+	// lo0, hi0, lo1, hi1, ... inclusive, sorted, neither overlapping
+	// nor adjacent
+	private final int[] ranges;
+
+	private CharClass(int[] ranges) {
+		this.ranges = ranges;
+	}
+
+	// ranges as described above, not checked
+	static CharClass fromRanges(int[] ranges) {
+		return ranges.length == 0 ? NONE : new CharClass(ranges);
+	}
+
+	public static CharClass none() { return NONE; }
+	public static CharClass any() { return ANY; }
+
+	public static CharClass of(int codePoint) {
+		return range(codePoint, codePoint);
+	}
+
+	public static CharClass range(int lo, int hi) {
+		if (lo < 0 || hi > MAX_CODE_POINT || lo > hi)
+			throw new IllegalArgumentException("bad range " + lo + ".." + hi);
+		return new CharClass(new int[] { lo, hi });
+	}
+
+	// the code points of the string
+	public static CharClass of(String codePoints) {
+		CharClass ret = NONE;
+		for (int i = 0; i < codePoints.length(); i += Character.charCount(codePoints.codePointAt(i))) {
+			ret = ret.union(of(codePoints.codePointAt(i)));
+		}
+		return ret;
+	}
+
+	public boolean isEmpty() {
+		return ranges.length == 0;
+	}
+
+	public boolean contains(int codePoint) {
+		// the range starting at or below the code point, if any
+		int lo = 0, hi = ranges.length / 2 - 1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (ranges[2 * mid] <= codePoint)
+				lo = mid + 1;
+			else
+				hi = mid - 1;
+		}
+		return hi >= 0 && codePoint <= ranges[2 * hi + 1];
+	}
+
+	public int rangeCount() {
+		return ranges.length / 2;
+	}
+
+	public int rangeStart(int i) {
+		return ranges[2 * i];
+	}
+
+	public int rangeEnd(int i) {
+		return ranges[2 * i + 1];
+	}
+
+	public long size() {
+		long ret = 0;
+		for (int i = 0; i < ranges.length; i += 2) {
+			ret += ranges[i + 1] - ranges[i] + 1;
+		}
+		return ret;
+	}
+
+	public CharClass union(CharClass other) {
+		final int[] merged = new int[ranges.length + other.ranges.length];
+		int n = 0;
+		int i = 0, j = 0;
+		// take ranges by start, merging each into the last if they touch
+		while (i < ranges.length || j < other.ranges.length) {
+			final int lo, hi;
+			if (j == other.ranges.length || i < ranges.length && ranges[i] <= other.ranges[j]) {
+				lo = ranges[i];
+				hi = ranges[i + 1];
+				i += 2;
+			} else {
+				lo = other.ranges[j];
+				hi = other.ranges[j + 1];
+				j += 2;
+			}
+			if (n > 0 && lo <= merged[n - 1] + 1) {
+				merged[n - 1] = Math.max(merged[n - 1], hi);
+			} else {
+				merged[n++] = lo;
+				merged[n++] = hi;
+			}
+		}
+		return new CharClass(Arrays.copyOf(merged, n));
+	}
+
+	public CharClass intersect(CharClass other) {
+		final int[] common = new int[ranges.length + other.ranges.length];
+		int n = 0;
+		int i = 0, j = 0;
+		while (i < ranges.length && j < other.ranges.length) {
+			final int lo = Math.max(ranges[i], other.ranges[j]);
+			final int hi = Math.min(ranges[i + 1], other.ranges[j + 1]);
+			if (lo <= hi) {
+				common[n++] = lo;
+				common[n++] = hi;
+			}
+			// move past whichever range ends first
+			if (ranges[i + 1] < other.ranges[j + 1])
+				i += 2;
+			else
+				j += 2;
+		}
+		return new CharClass(Arrays.copyOf(common, n));
+	}
+
+	public CharClass complement() {
+		final int[] gaps = new int[ranges.length + 2];
+		int n = 0;
+		int next = 0;
+		for (int i = 0; i < ranges.length; i += 2) {
+			if (ranges[i] > next) {
+				gaps[n++] = next;
+				gaps[n++] = ranges[i] - 1;
+			}
+			next = ranges[i + 1] + 1;
+		}
+		if (next <= MAX_CODE_POINT) {
+			gaps[n++] = next;
+			gaps[n++] = MAX_CODE_POINT;
+		}
+		return new CharClass(Arrays.copyOf(gaps, n));
+	}
+
+	public CharClass minus(CharClass other) {
+		return intersect(other.complement());
+	}
+
+	@Override
+	public int compareTo(CharClass other) {
+		for (int i = 0; i < ranges.length && i < other.ranges.length; ++i) {
+			if (ranges[i] != other.ranges[i])
+				return ranges[i] < other.ranges[i] ? -1 : 1;
+		}
+		return Integer.compare(ranges.length, other.ranges.length);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof CharClass)) return false;
+		return Arrays.equals(ranges, ((CharClass) other).ranges);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(ranges);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < ranges.length; i += 2) {
+			appendCodePoint(sb, ranges[i]);
+			if (ranges[i + 1] != ranges[i]) {
+				if (ranges[i + 1] > ranges[i] + 1)
+					sb.append('-');
+				appendCodePoint(sb, ranges[i + 1]);
+			}
+		}
+		return sb.append(']').toString();
+	}
+
+	private static void appendCodePoint(StringBuilder sb, int codePoint) {
+		if (codePoint == '\\' || codePoint == ']' || codePoint == '[' || codePoint == '-' || codePoint == '^')
+			sb.append('\\').append((char) codePoint);
+		else if (codePoint < 0x20 || codePoint == 0x7f || codePoint > 0xffff || Character.isSurrogate((char) codePoint))
+			sb.append(String.format(codePoint > 0xffff ? "\\U%06x" : "\\u%04x", codePoint));
+		else
+			sb.append((char) codePoint);
+	}
+}
@@ -0,0 +1,166 @@
+package algebraparsing.KleeneAlgebra;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// limits on how much work a compilation may do, so a grammar whose
+// expressions blow up can be rejected instead of running out of memory.
+//
+// a context applies to whatever run() does on the calling thread. the
+// algebra code polls it as it goes: every regexp node created counts
+// against the node limit, every derivative state (of a TranslationAutomaton,
+// or a pair of regexps being compared) against the state limit, and the
+// clock is checked at every elimination step and every so many nodes.
+// once a limit is hit, or cancel() is called from any thread, the next
+// poll throws a CompileLimitExceededException with the statistics so far.
+//
+// a context run inside another replaces it until the inner run finishes.
+public final class CompileContext {
+
+	public static final long NO_LIMIT = Long.MAX_VALUE;
+
+	public static enum Reason { NODES, TIME, STATES, CANCELLED }
+
+	public static final class Statistics {
+		public final long nodes;
+		public final long states;
+		public final long pivots;
+		public final long elapsedMillis;
+
+		private Statistics(long nodes, long states, long pivots, long elapsedMillis) {
+			this.nodes = nodes;
+			this.states = states;
+			this.pivots = pivots;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		@Override
+		public String toString() {
+			return nodes + " nodes, " + states + " states, " + pivots + " pivots, " + elapsedMillis + "ms";
+		}
+	}
+
+	// how many nodes between looks at the clock
+	private static final int TIME_CHECK_INTERVAL = 1024;
+
+	private static final ThreadLocal<CompileContext> CURRENT = new ThreadLocal<CompileContext>();
+	// threads currently running in some context, when there are none
+	// the hooks return without touching the thread local
+	private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+	private final long maxNodes;
+	private final long maxMillis;
+	private final long maxStates;
+
+	private long nodes = 0;
+	private long states = 0;
+	private long pivots = 0;
+	private long startNanos;
+	private boolean hasDeadline;
+	private long deadlineNanos;
+	private long finishNanos;
+	private boolean started = false;
+	private boolean finished = false;
+	private volatile boolean cancelled = false;
+
+	public CompileContext(long maxNodes, long maxMillis, long maxStates) {
+		if (maxNodes <= 0 || maxMillis <= 0 || maxStates <= 0)
+			throw new IllegalArgumentException("limits must be positive");
+		this.maxNodes = maxNodes;
+		this.maxMillis = maxMillis;
+		this.maxStates = maxStates;
+	}
+
+	// runs the work under this context, a context can only be run once
+	public <R> R run(Supplier<R> work) {
+		synchronized (this) {
+			if (started)
+				throw new IllegalStateException("context has already been run");
+			started = true;
+		}
+		startNanos = System.nanoTime();
+		// anything past a few hundred years is as good as no limit
+		hasDeadline = maxMillis < Long.MAX_VALUE / 1000000;
+		deadlineNanos = hasDeadline ? startNanos + maxMillis * 1000000 : 0;
+		final CompileContext previous = CURRENT.get();
+		CURRENT.set(this);
+		ACTIVE.incrementAndGet();
+		try {
+			return work.get();
+		} finally {
+			ACTIVE.decrementAndGet();
+			if (previous == null)
+				CURRENT.remove();
+			else
+				CURRENT.set(previous);
+			synchronized (this) {
+				finishNanos = System.nanoTime();
+				finished = true;
+			}
+		}
+	}
+
+	// can be called from any thread, the work stops at its next poll
+	public void cancel() {
+		cancelled = true;
+	}
+
+	// statistics so far, or final ones once run() has returned;
+	// only meaningful from the thread calling run() until it returns
+	public synchronized Statistics statistics() {
+		final long end = finished ? finishNanos : System.nanoTime();
+		return new Statistics(nodes, states, pivots, started ? (end - startNanos) / 1000000 : 0);
+	}
+
+	private static CompileContext current() {
+		if (ACTIVE.get() == 0)
+			return null;
+		return CURRENT.get();
+	}
+
+	public static void nodeCreated() {
+		final CompileContext context = current();
+		if (context == null)
+			return;
+		if (++context.nodes > context.maxNodes)
+			context.fail(Reason.NODES);
+		if (context.nodes % TIME_CHECK_INTERVAL == 0)
+			context.checkTime();
+	}
+
+	public static void stateCreated() {
+		final CompileContext context = current();
+		if (context == null)
+			return;
+		if (++context.states > context.maxStates)
+			context.fail(Reason.STATES);
+		context.checkTime();
+	}
+
+	// a step of elimination in KleeneMatrix.solve()
+	public static void pivot() {
+		final CompileContext context = current();
+		if (context == null)
+			return;
+		++context.pivots;
+		context.checkTime();
+	}
+
+	// just looks at the clock, for loops that don't create anything
+	public static void checkpoint() {
+		final CompileContext context = current();
+		if (context != null)
+			context.checkTime();
+	}
+
+	private void checkTime() {
+		if (cancelled)
+			fail(Reason.CANCELLED);
+		if (hasDeadline && System.nanoTime() - deadlineNanos > 0)
+			fail(Reason.TIME);
+	}
+
+	private void fail(Reason reason) {
+		throw new CompileLimitExceededException(reason, statistics());
+	}
+}
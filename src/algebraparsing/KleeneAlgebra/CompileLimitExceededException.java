@@ -0,0 +1,34 @@
+package algebraparsing.KleeneAlgebra;
+
+// thrown when work done under a CompileContext goes over one of its limits
+public class CompileLimitExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final CompileContext.Reason reason;
+	private final CompileContext.Statistics statistics;
+
+	public CompileLimitExceededException(CompileContext.Reason reason, CompileContext.Statistics statistics) {
+		super(message(reason) + " after " + statistics);
+		this.reason = reason;
+		this.statistics = statistics;
+	}
+
+	private static String message(CompileContext.Reason reason) {
+		switch (reason) {
+		case NODES: return "too many regexp nodes";
+		case TIME: return "out of time";
+		case STATES: return "too many derivative states";
+		default: return "cancelled";
+		}
+	}
+
+	public CompileContext.Reason getReason() {
+		return reason;
+	}
+
+	// what had been done when the limit was hit
+	public CompileContext.Statistics getStatistics() {
+		return statistics;
+	}
+}
@@ -0,0 +1,81 @@
+package algebraparsing.KleeneAlgebra;
+
+import java.util.function.Function;
+
+import algebraparsing.KleeneAlgebra.OperationCounters.Operation;
+
+// wraps an element of any Kleene algebra so that its operations are
+// counted by Instrumentation. a matrix can be instrumented with
+// m.projectionThroughMorphism(CountingElement.<T>wrapper()), and
+// unwrapped again with unwrapper().
+public final class CountingElement<T extends KleeneAlgebraElement<T>>
+		implements KleeneAlgebraElement<CountingElement<T>> {
+
+	private final T value;
+
+	private CountingElement(T value) {
+		if (value == null)
+			throw new IllegalArgumentException("value must not be null");
+		this.value = value;
+	}
+
+	public static <T extends KleeneAlgebraElement<T>> CountingElement<T> of(T value) {
+		return new CountingElement<T>(value);
+	}
+
+	public T getValue() {
+		return value;
+	}
+
+	public static <T extends KleeneAlgebraElement<T>> Function<T, CountingElement<T>> wrapper() {
+		return new Function<T, CountingElement<T>>() {
+			@Override
+			public CountingElement<T> apply(T t) {
+				return of(t);
+			}
+		};
+	}
+
+	public static <T extends KleeneAlgebraElement<T>> Function<CountingElement<T>, T> unwrapper() {
+		return new Function<CountingElement<T>, T>() {
+			@Override
+			public T apply(CountingElement<T> t) {
+				return t.value;
+			}
+		};
+	}
+
+	@Override
+	public CountingElement<T> add(CountingElement<T> el) {
+		Instrumentation.count(Operation.ADD);
+		return new CountingElement<T>(value.add(el.value));
+	}
+
+	@Override
+	public CountingElement<T> mul(CountingElement<T> el) {
+		Instrumentation.count(Operation.MUL);
+		return new CountingElement<T>(value.mul(el.value));
+	}
+
+	@Override
+	public CountingElement<T> close() {
+		Instrumentation.count(Operation.CLOSE);
+		return new CountingElement<T>(value.close());
+	}
+
+	@Override
+	public String toString() {
+		return value.toString();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof CountingElement)) return false;
+		return value.equals(((CountingElement<?>) other).value);
+	}
+
+	@Override
+	public int hashCode() {
+		return value.hashCode();
+	}
+}
@@ -0,0 +1,78 @@
+package algebraparsing.KleeneAlgebra;
+
+// the natural numbers extended with infinity, solving a grammar over it
+// counts the derivations of each nonterminal (arithmetic saturates to
+// infinity instead of overflowing)
+public final class CountingSemiringElement implements KleeneAlgebraElement<CountingSemiringElement> {
+
+	private static final long INFINITE = -1;
+
+	private static final CountingSemiringElement ZERO = new CountingSemiringElement(0);
+	private static final CountingSemiringElement ONE = new CountingSemiringElement(1);
+	private static final CountingSemiringElement INFINITY = new CountingSemiringElement(INFINITE);
+
+	private final long value;
+
+	private CountingSemiringElement(long value) {
+		this.value = value;
+	}
+
+	public static CountingSemiringElement of(long value) {
+		if (value < 0)
+			throw new IllegalArgumentException("count must be nonnegative, but is " + value);
+		return new CountingSemiringElement(value);
+	}
+
+	public static CountingSemiringElement zero() { return ZERO; }
+	public static CountingSemiringElement one() { return ONE; }
+	public static CountingSemiringElement infinity() { return INFINITY; }
+
+	public boolean isInfinite() { return value == INFINITE; }
+
+	public long getValue() {
+		if (isInfinite())
+			throw new RuntimeException("count is infinite");
+		return value;
+	}
+
+	@Override
+	public CountingSemiringElement add(CountingSemiringElement el) {
+		if (this.isInfinite() || el.isInfinite())
+			return INFINITY;
+		final long sum = this.value + el.value;
+		return sum < 0 ? INFINITY : new CountingSemiringElement(sum);
+	}
+
+	@Override
+	public CountingSemiringElement mul(CountingSemiringElement el) {
+		if (this.value == 0 || el.value == 0)
+			return ZERO;
+		if (this.isInfinite() || el.isInfinite())
+			return INFINITY;
+		final long product = this.value * el.value;
+		if (product / el.value != this.value || product < 0)
+			return INFINITY;
+		return new CountingSemiringElement(product);
+	}
+
+	@Override
+	public CountingSemiringElement close() {
+		// 1 + x + x^2 + ... only converges when x is zero
+		return this.value == 0 ? ONE : INFINITY;
+	}
+
+	@Override
+	public String toString() {
+		return isInfinite() ? "infinity" : Long.toString(value);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof CountingSemiringElement && ((CountingSemiringElement) other).value == this.value;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(value);
+	}
+}
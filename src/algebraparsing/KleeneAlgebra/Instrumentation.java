@@ -0,0 +1,166 @@
+package algebraparsing.KleeneAlgebra;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import algebraparsing.KleeneAlgebra.OperationCounters.Operation;
+import algebraparsing.KleeneAlgebra.OperationCounters.Snapshot;
+
+// counts what the algebra code does, to find where time goes.
+// regexp node creation and decompose() are counted by RegularExpression
+// itself; add, mul and close are counted for elements wrapped in a
+// CountingElement. nothing is counted until enable() is called, and
+// while disabled each hook costs a single volatile read.
+//
+// counts always go to the global counters, which can be read through
+// global(), or over jmx once registerMBean() has been called. a thread can
+// additionally trace(), which breaks down its own counts by the step of
+// KleeneMatrix.solve() (and so close()) they were made in.
+public class Instrumentation {
+
+	public static final String MBEAN_NAME = "algebraparsing:type=OperationCounters";
+
+	private static volatile boolean enabled = false;
+	private static final OperationCounters GLOBAL = new OperationCounters();
+	private static final ThreadLocal<Trace> TRACE = new ThreadLocal<Trace>();
+
+	// can't instantiate
+	private Instrumentation() {}
+
+	public static void enable() { enabled = true; }
+	public static void disable() { enabled = false; }
+	public static boolean isEnabled() { return enabled; }
+
+	public static OperationCounters global() {
+		return GLOBAL;
+	}
+
+	public static synchronized void registerMBean() {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = new ObjectName(MBEAN_NAME);
+			if (!server.isRegistered(name))
+				server.registerMBean(GLOBAL, name);
+		} catch (JMException e) {
+			throw new RuntimeException("couldn't register operation counters", e);
+		}
+	}
+
+	static void count(Operation operation) {
+		if (!enabled)
+			return;
+		GLOBAL.increment(operation);
+		final Trace trace = TRACE.get();
+		if (trace != null)
+			++trace.current[operation.ordinal()];
+	}
+
+	// called by solve(), as it starts eliminating unknown pivot of dimension unknowns
+	static void pivot(int dimension, int pivot) {
+		if (!enabled)
+			return;
+		final Trace trace = TRACE.get();
+		if (trace != null)
+			trace.startStep(Step.ELIMINATE, dimension, pivot);
+	}
+
+	static void backSubstitution(int dimension) {
+		if (!enabled)
+			return;
+		final Trace trace = TRACE.get();
+		if (trace != null)
+			trace.startStep(Step.SUBSTITUTE, dimension, -1);
+	}
+
+	static void solveFinished() {
+		if (!enabled)
+			return;
+		final Trace trace = TRACE.get();
+		if (trace != null)
+			trace.startStep(null, 0, -1);
+	}
+
+	// starts tracing the current thread, replacing any trace it already had
+	public static Trace trace() {
+		final Trace ret = new Trace();
+		TRACE.set(ret);
+		return ret;
+	}
+
+	public static enum Step { ELIMINATE, SUBSTITUTE }
+
+	// the counts made during one step of solve(), step is null for
+	// counts made outside of solve()
+	public static final class StepCounts {
+		public final Step step;
+		public final int dimension;
+		public final int pivot;
+		public final Snapshot counts;
+
+		private StepCounts(Step step, int dimension, int pivot, Snapshot counts) {
+			this.step = step;
+			this.dimension = dimension;
+			this.pivot = pivot;
+			this.counts = counts;
+		}
+
+		@Override
+		public String toString() {
+			final String label;
+			if (step == null)
+				label = "outside solve";
+			else if (step == Step.ELIMINATE)
+				label = "eliminate " + pivot + "/" + dimension;
+			else
+				label = "substitute " + dimension;
+			return label + ": " + counts;
+		}
+	}
+
+	// a solve() nested in another (closing a matrix of matrices, say) shows
+	// up as steps between the outer one's steps, rather than inside them
+	public static final class Trace {
+
+		private final List<StepCounts> steps = new ArrayList<StepCounts>();
+		private long[] current = new long[Operation.values().length];
+		private Step step = null;
+		private int dimension = 0;
+		private int pivot = -1;
+		private boolean stopped = false;
+
+		private Trace() {}
+
+		private void startStep(Step step, int dimension, int pivot) {
+			flush();
+			this.step = step;
+			this.dimension = dimension;
+			this.pivot = pivot;
+		}
+
+		private void flush() {
+			boolean any = false;
+			for (long count : current) {
+				any |= count != 0;
+			}
+			if (any || step != null)
+				steps.add(new StepCounts(step, dimension, pivot, new Snapshot(current)));
+			current = new long[current.length];
+		}
+
+		// stops tracing, if this is still the current thread's trace,
+		// and returns the counts by step in the order the steps happened
+		public List<StepCounts> stop() {
+			if (!stopped) {
+				flush();
+				stopped = true;
+				if (TRACE.get() == this)
+					TRACE.remove();
+			}
+			return Collections.unmodifiableList(steps);
+		}
+	}
+}
@@ -3,6 +3,9 @@ package algebraparsing.KleeneAlgebra;
 import java.util.*;
 import java.util.function.*;
 
+// instances of this type are unmodifiable, so they can be shared between
+// threads and used as keys, use a Builder to put a matrix together entry
+// by entry
 public class KleeneMatrix<T extends KleeneAlgebraElement<T>>
 		implements KleeneAlgebraElement<KleeneMatrix<T>> {
 
@@ -13,6 +16,9 @@ public class KleeneMatrix<T extends KleeneAlgebraElement<T>>
 	private final T zero;
 	private final T one;
 	
+	private volatile KleeneMatrix<T> closure;
+	private int hash;
+	
 	private KleeneMatrix(List<List<T>> data, int m, int n, T zero, T one) {
 		this.data = data;
 		this.m = m;
@@ -91,28 +97,18 @@ public class KleeneMatrix<T extends KleeneAlgebraElement<T>>
 		});
 	}
 
-	private KleeneMatrix<T> createClone() {
-		return this.createInstance(m, n, new BiFunction<Integer, Integer, T>() {
-			@Override
-			public T apply(Integer i, Integer j) {
-				return KleeneMatrix.this.getAt(i, j);
-			}
-		});
-	}
-
-	private void leftMulRowByFactor(int i, T factor) {
-		for (int j = 0; j < this.n; ++j) {
-			this.setAt(i, j, factor.mul(this.getAt(i, j)));
-		}
-	}
-
-	private void addLeftScaledRowToRow(int isrc, T factor, int idst) {
-		for (int j = 0; j < this.n; ++j) {
-			this.setAt(idst, j, factor.mul(this.getAt(isrc, j))
-					.add(this.getAt(idst, j)));
+	// a fresh, modifiable copy of the entries, for algorithms that
+	// work in place before building their result
+	private List<List<T>> copyData() {
+		final List<List<T>> ret = new ArrayList<List<T>>(m);
+		for (List<T> row : data) {
+			ret.add(new ArrayList<T>(row));
 		}
+		return ret;
 	}
 
+	// memoized, since instances are immutable the closure never changes,
+	// and racing threads at worst compute it twice
 	@Override
 	public KleeneMatrix<T> close() {
 		if (n != m) {
@@ -120,36 +116,113 @@ public class KleeneMatrix<T extends KleeneAlgebraElement<T>>
 			throw new RuntimeException("can only close square matrices");
 		}
 		
-		//clone matrix
-		final KleeneMatrix<T> left = this.createClone();
-		final KleeneMatrix<T> right = this.createIdentity();
-		
-		//forward triangularization
+		KleeneMatrix<T> ret = this.closure;
+		if (ret == null) {
+			// A* is the least solution of X = AX + I
+			ret = this.solve(this.createIdentity());
+			// and A** = A*
+			ret.closure = ret;
+			this.closure = ret;
+		}
+		return ret;
+	}
+	
+	// computes the least solution X of X = this * X + vector, which is
+	// this.close().mul(vector), but without building the closure:
+	// elimination is done directly on the augmented system [this | vector],
+	// so only the entries of the solution are ever materialized
+	public KleeneMatrix<T> solve(KleeneMatrix<T> vector) {
+		if (n != m)
+			throw new RuntimeException("can only solve with square matrices");
+		if (vector.m != n)
+			throw new IllegalArgumentException("vector is not compatible with matrix");
+
+		final List<List<T>> left = this.copyData();
+		final List<List<T>> right = vector.copyData();
+
+		//forward elimination, after step k row k only refers to unknowns after k
 		for (int k = 0; k < n; ++k) {
-			final T factor = left.getAt(k, k).close();
-			left.setAt(k, k, zero);
-			left.leftMulRowByFactor(k, factor);
-			right.leftMulRowByFactor(k, factor);
+			Instrumentation.pivot(n, k);
+			CompileContext.pivot();
+			final T factor = left.get(k).get(k).close();
+			left.get(k).set(k, zero);
+			for (int j = k + 1; j < n; ++j) {
+				left.get(k).set(j, factor.mul(left.get(k).get(j)));
+			}
+			for (int j = 0; j < vector.n; ++j) {
+				right.get(k).set(j, factor.mul(right.get(k).get(j)));
+			}
 			for (int i = k + 1; i < n; ++i) {
-				final T otherFactor = left.getAt(i, k);
-				left.setAt(i, k, zero);
-				left.addLeftScaledRowToRow(k, otherFactor, i);
-				right.addLeftScaledRowToRow(k, otherFactor, i);
+				final T otherFactor = left.get(i).get(k);
+				if (otherFactor.equals(zero))
+					continue;
+				CompileContext.checkpoint();
+				left.get(i).set(k, zero);
+				for (int j = k + 1; j < n; ++j) {
+					final T term = left.get(k).get(j);
+					if (!term.equals(zero))
+						left.get(i).set(j, otherFactor.mul(term).add(left.get(i).get(j)));
+				}
+				for (int j = 0; j < vector.n; ++j) {
+					right.get(i).set(j, otherFactor.mul(right.get(k).get(j)).add(right.get(i).get(j)));
+				}
 			}
 		}
-		
-		//back substitution
-		for (int j = n - 1; j >= 0; --j) {
-			for (int i = j - 1; i >= 0; --i) {
-				final T factor = left.getAt(i, j);
-				left.setAt(j - 1, j, zero);
-				left.addLeftScaledRowToRow(j, factor, i);
-				right.addLeftScaledRowToRow(j, factor, i);
+
+		//back substitution, unknowns after k are already solved
+		Instrumentation.backSubstitution(n);
+		for (int k = n - 1; k >= 0; --k) {
+			for (int i = k - 1; i >= 0; --i) {
+				final T factor = left.get(i).get(k);
+				if (factor.equals(zero))
+					continue;
+				CompileContext.checkpoint();
+				left.get(i).set(k, zero);
+				for (int j = 0; j < vector.n; ++j) {
+					right.get(i).set(j, factor.mul(right.get(k).get(j)).add(right.get(i).get(j)));
+				}
 			}
 		}
-		return right;
+
+		Instrumentation.solveFinished();
+		return new KleeneMatrix<T>(right, n, vector.n, zero, one);
 	}
-	
+
+	// same as solve(KleeneMatrix), for a single column
+	public KleeneVector<T> solve(KleeneVector<T> vector) {
+		final KleeneMatrix<T> solution = this.solve(vector.asColumn(one));
+		final KleeneVector<T> ret = new KleeneVector<T>(n, zero);
+		for (int i = 0; i < n; ++i) {
+			ret.set(i, solution.getAt(i, 0));
+		}
+		return ret;
+	}
+
+	// this * vector
+	public KleeneVector<T> mul(KleeneVector<T> vector) {
+		final KleeneVector<T> ret = new KleeneVector<T>(m, zero);
+		mulAccumulate(vector, ret);
+		return ret;
+	}
+
+	// dst = dst + this * vector, without allocating a new vector
+	public void mulAccumulate(KleeneVector<T> vector, KleeneVector<T> dst) {
+		if (vector.size() != n)
+			throw new IllegalArgumentException("vector is not compatible with matrix");
+		if (dst.size() != m)
+			throw new IllegalArgumentException("destination is not compatible with matrix");
+		if (vector == dst)
+			throw new IllegalArgumentException("can't accumulate into the vector being multiplied");
+		for (int i = 0; i < m; ++i) {
+			final List<T> row = data.get(i);
+			for (int k = 0; k < n; ++k) {
+				final T factor = row.get(k);
+				if (!factor.equals(zero))
+					dst.accumulate(i, factor.mul(vector.get(k)));
+			}
+		}
+	}
+
 	public KleeneMatrix<T> transpose() {
 		//this is not efficient, but
 		//let's just go with it for now
@@ -161,21 +234,31 @@ public class KleeneMatrix<T extends KleeneAlgebraElement<T>>
 		});
 	}
 	
+	// a view of the closure of this matrix that only computes
+	// the rows that are actually asked for
+	public LazyKleeneClosure<T> lazyClose() {
+		if (n != m)
+			throw new RuntimeException("can only close square matrices");
+		return new LazyKleeneClosure<T>(this);
+	}
+	
 	public int getM() { return this.m; }
 	public int getN() { return this.n; }
+	
+	T getZero() { return this.zero; }
+	T getOne() { return this.one; }
 
 	private KleeneMatrix<T> createInstance(int m, int n,
 			BiFunction<Integer, Integer, T> entryPolicy) {
-		final KleeneMatrix<T> ret = new KleeneMatrix<T>(
-				new ArrayList<List<T>>(m), m, n, zero, one);
+		final List<List<T>> dat = new ArrayList<List<T>>(m);
 		for (int i = 0; i < m; ++i) {
-			final List<T> row = new ArrayList<T>(m);
-			ret.data.add(row);
+			final List<T> row = new ArrayList<T>(n);
+			dat.add(row);
 			for (int j = 0; j < n; ++j) {
 				row.add(entryPolicy.apply(i, j));
 			}
 		}
-		return ret;
+		return new KleeneMatrix<T>(dat, m, n, zero, one);
 	}
 	
 	public T getAt(int i, int j) {
@@ -183,11 +266,6 @@ public class KleeneMatrix<T extends KleeneAlgebraElement<T>>
 		return data.get(i).get(j);
 	}
 
-	public void setAt(int i, int j, T val) {
-		indexCheck(i, j);
-		data.get(i).set(j, val);
-	}
-
 	private void indexCheck(int i, int j) {
 		if (i < 0) {
 			throw new IllegalArgumentException("i less than 0");
@@ -203,6 +281,34 @@ public class KleeneMatrix<T extends KleeneAlgebraElement<T>>
 		}
 	}
 	
+	public Builder<T> toBuilder() {
+		return new Builder<T>(copyData(), m, n, zero, one);
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) return true;
+		if (o == null) return false;
+		if (!(o instanceof KleeneMatrix)) return false;
+		final KleeneMatrix<?> other = (KleeneMatrix<?>) o;
+		return this.m == other.m && this.n == other.n
+				&& this.hashCode() == other.hashCode()
+				&& this.zero.equals(other.zero) && this.one.equals(other.one)
+				&& this.data.equals(other.data);
+	}
+	
+	// cached, same idea as String.hashCode(), a race just means
+	// the hash gets computed more than once
+	@Override
+	public int hashCode() {
+		int h = this.hash;
+		if (h == 0) {
+			h = 31 * data.hashCode() + zero.hashCode();
+			this.hash = h;
+		}
+		return h;
+	}
+	
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -228,4 +334,76 @@ public class KleeneMatrix<T extends KleeneAlgebraElement<T>>
 		return new KleeneMatrix<U>(mDat, morphism.apply(this.zero), morphism.apply(this.one));
 	}
 	
+	// modifiable counterpart of KleeneMatrix, not safe to share between threads
+	public static class Builder<T extends KleeneAlgebraElement<T>> {
+		
+		private final int m;
+		private final int n;
+		private final List<List<T>> data;
+		private final T zero;
+		private final T one;
+		
+		private Builder(List<List<T>> data, int m, int n, T zero, T one) {
+			this.data = data;
+			this.m = m;
+			this.n = n;
+			this.zero = zero;
+			this.one = one;
+		}
+		
+		// starts out as the m x n zero matrix
+		public Builder(int m, int n, T zero, T one) {
+			if (m <= 0)
+				throw new IllegalArgumentException("m must be positive");
+			if (n <= 0)
+				throw new IllegalArgumentException("n must be positive");
+			if (zero == null)
+				throw new IllegalArgumentException("zero is null");
+			if (one == null)
+				throw new IllegalArgumentException("one is null");
+			this.m = m;
+			this.n = n;
+			this.zero = zero;
+			this.one = one;
+			this.data = new ArrayList<List<T>>(m);
+			for (int i = 0; i < m; ++i) {
+				this.data.add(new ArrayList<T>(Collections.nCopies(n, zero)));
+			}
+		}
+		
+		public int getM() { return this.m; }
+		public int getN() { return this.n; }
+		
+		public T getAt(int i, int j) {
+			indexCheck(i, j);
+			return data.get(i).get(j);
+		}
+		
+		public Builder<T> setAt(int i, int j, T val) {
+			indexCheck(i, j);
+			if (val == null)
+				throw new IllegalArgumentException("val is null");
+			data.get(i).set(j, val);
+			return this;
+		}
+		
+		// entry (i, j) becomes entry (i, j) + val
+		public Builder<T> addAt(int i, int j, T val) {
+			return setAt(i, j, getAt(i, j).add(val));
+		}
+		
+		private void indexCheck(int i, int j) {
+			if (i < 0 || i >= m)
+				throw new IllegalArgumentException("i out of range (m = " + m + ")");
+			if (j < 0 || j >= n)
+				throw new IllegalArgumentException("j out of range (n = " + n + ")");
+		}
+		
+		// the builder can keep being used afterwards,
+		// it doesn't affect matrices that were already built
+		public KleeneMatrix<T> build() {
+			return new KleeneMatrix<T>(data, zero, one);
+		}
+	}
+	
 }
@@ -0,0 +1,122 @@
+package algebraparsing.KleeneAlgebra;
+
+import java.util.*;
+
+// a dense vector over a Kleene algebra, indexed by 0..size()-1 (for
+// grammars, these are the indices of nonterminalIndexMap).
+// unlike KleeneMatrix and FreeKleeneModuleElement, instances of this
+// type are modifiable, so that iterative solvers can accumulate into
+// the same vector on every step instead of building a new one
+public class KleeneVector<T extends KleeneAlgebraElement<T>> {
+
+	private final Object[] data;
+	private final T zero;
+
+	// creates the zero vector
+	public KleeneVector(int size, T zero) {
+		if (size < 0)
+			throw new IllegalArgumentException("size must not be negative");
+		if (zero == null)
+			throw new IllegalArgumentException("zero is null");
+		this.data = new Object[size];
+		Arrays.fill(this.data, zero);
+		this.zero = zero;
+	}
+
+	public KleeneVector(List<T> data, T zero) {
+		if (data == null)
+			throw new IllegalArgumentException("data is null");
+		if (zero == null)
+			throw new IllegalArgumentException("zero is null");
+		this.data = new Object[data.size()];
+		for (int i = 0; i < this.data.length; ++i) {
+			if (data.get(i) == null)
+				throw new IllegalArgumentException("found null entry in data");
+			this.data[i] = data.get(i);
+		}
+		this.zero = zero;
+	}
+
+	private KleeneVector(Object[] data, T zero) {
+		this.data = data;
+		this.zero = zero;
+	}
+
+	public int size() { return data.length; }
+
+	public T getZero() { return zero; }
+
+	@SuppressWarnings("unchecked")
+	public T get(int i) {
+		return (T) data[i];
+	}
+
+	public void set(int i, T val) {
+		if (val == null)
+			throw new IllegalArgumentException("val is null");
+		data[i] = val;
+	}
+
+	// this[i] = this[i] + val
+	public void accumulate(int i, T val) {
+		if (!val.equals(zero))
+			data[i] = get(i).add(val);
+	}
+
+	// this = this + other
+	public void addInPlace(KleeneVector<T> other) {
+		sizeCheck(other);
+		for (int i = 0; i < data.length; ++i) {
+			accumulate(i, other.get(i));
+		}
+	}
+
+	public KleeneVector<T> add(KleeneVector<T> other) {
+		final KleeneVector<T> ret = this.copy();
+		ret.addInPlace(other);
+		return ret;
+	}
+
+	public KleeneVector<T> copy() {
+		return new KleeneVector<T>(data.clone(), zero);
+	}
+
+	public List<T> asList() {
+		final List<T> ret = new ArrayList<T>(data.length);
+		for (int i = 0; i < data.length; ++i) {
+			ret.add(get(i));
+		}
+		return ret;
+	}
+
+	// this vector as an n x 1 matrix
+	public KleeneMatrix<T> asColumn(T one) {
+		final List<List<T>> dat = new ArrayList<List<T>>(data.length);
+		for (int i = 0; i < data.length; ++i) {
+			dat.add(Collections.singletonList(get(i)));
+		}
+		return new KleeneMatrix<T>(dat, zero, one);
+	}
+
+	void sizeCheck(KleeneVector<T> other) {
+		if (other.data.length != this.data.length)
+			throw new IllegalArgumentException("vector sizes don't match");
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == null) return false;
+		if (!(o instanceof KleeneVector)) return false;
+		return Arrays.equals(this.data, ((KleeneVector<?>) o).data);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(data);
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(data);
+	}
+}
@@ -0,0 +1,204 @@
+package algebraparsing.KleeneAlgebra;
+
+import java.util.*;
+
+// a view of the closure of a square matrix in which rows are computed
+// only when they're asked for.
+// the matrix is treated as a weighted digraph with an edge wherever an entry
+// isn't zero, and split into strongly connected components.  the closure of
+// a single component is a small dense problem that we hand to
+// KleeneMatrix.close(), while paths that leave a component are composed
+// with the (memoized) rows of the nodes they lead to.  so a query only does
+// work proportional to the part of the graph that's reachable from its row.
+public class LazyKleeneClosure<T extends KleeneAlgebraElement<T>> {
+
+	private final KleeneMatrix<T> matrix;
+	private final int n;
+	private final T zero;
+
+	// tarjan bookkeeping, kept across queries since components
+	// that have been found once never change
+	private final int[] index;
+	private final int[] lowlink;
+	private final int[] component;
+	private int nextIndex = 0;
+	private final List<List<Integer>> componentMembers = new ArrayList<List<Integer>>();
+	private final List<KleeneMatrix<T>> componentClosures = new ArrayList<KleeneMatrix<T>>();
+
+	// memoized rows of the closure, null until computed
+	private final List<List<T>> rows;
+
+	LazyKleeneClosure(KleeneMatrix<T> matrix) {
+		this.matrix = matrix;
+		this.n = matrix.getN();
+		this.zero = matrix.getZero();
+		this.index = new int[n];
+		this.lowlink = new int[n];
+		this.component = new int[n];
+		Arrays.fill(index, -1);
+		this.rows = new ArrayList<List<T>>(Collections.<List<T>>nCopies(n, null));
+	}
+
+	public int getN() { return this.n; }
+
+	public T getAt(int i, int j) {
+		if (j < 0 || j >= n)
+			throw new IllegalArgumentException("j out of range");
+		return getRow(i).get(j);
+	}
+
+	public List<T> getRow(int i) {
+		if (i < 0 || i >= n)
+			throw new IllegalArgumentException("i out of range");
+		if (rows.get(i) == null)
+			computeRow(i);
+		return rows.get(i);
+	}
+
+	// number of rows materialized so far
+	public int computedRowCount() {
+		int count = 0;
+		for (List<T> row : rows) {
+			if (row != null)
+				++count;
+		}
+		return count;
+	}
+
+	private boolean hasEdge(int i, int j) {
+		return !matrix.getAt(i, j).equals(zero);
+	}
+
+	private void computeRow(int i) {
+		if (index[i] == -1)
+			findComponents(i);
+
+		// gather every row that this one depends on, which are rows
+		// of nodes reached by leaving a component
+		final Set<Integer> needed = new HashSet<Integer>();
+		final Deque<Integer> worklist = new ArrayDeque<Integer>();
+		needed.add(i);
+		worklist.push(i);
+		while (!worklist.isEmpty()) {
+			final int v = worklist.pop();
+			for (int s : componentMembers.get(component[v])) {
+				for (int t = 0; t < n; ++t) {
+					if (component[t] != component[v] && hasEdge(s, t)
+							&& rows.get(t) == null && needed.add(t)) {
+						worklist.push(t);
+					}
+				}
+			}
+		}
+
+		// components are numbered sinks first, so computing in order of
+		// component guarantees that dependencies are already there
+		final List<Integer> order = new ArrayList<Integer>(needed);
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(component[a], component[b]);
+			}
+		});
+		for (int v : order) {
+			rows.set(v, Collections.unmodifiableList(rowFromDependencies(v)));
+		}
+	}
+
+	private List<T> rowFromDependencies(int i) {
+		final int c = component[i];
+		final List<Integer> members = componentMembers.get(c);
+		final KleeneMatrix<T> closure = componentClosure(c);
+		final int li = members.indexOf(i);
+
+		final List<T> row = new ArrayList<T>(Collections.nCopies(n, zero));
+		for (int ls = 0; ls < members.size(); ++ls) {
+			final T inside = closure.getAt(li, ls);
+			if (inside.equals(zero))
+				continue;
+			final int s = members.get(ls);
+			row.set(s, row.get(s).add(inside));
+			for (int t = 0; t < n; ++t) {
+				if (component[t] == c || !hasEdge(s, t))
+					continue;
+				final T factor = inside.mul(matrix.getAt(s, t));
+				final List<T> rowT = rows.get(t);
+				for (int j = 0; j < n; ++j) {
+					final T entry = rowT.get(j);
+					if (!entry.equals(zero))
+						row.set(j, row.get(j).add(factor.mul(entry)));
+				}
+			}
+		}
+		return row;
+	}
+
+	private KleeneMatrix<T> componentClosure(int c) {
+		if (componentClosures.get(c) == null) {
+			final List<Integer> members = componentMembers.get(c);
+			final List<List<T>> dat = new ArrayList<List<T>>();
+			for (int i : members) {
+				final List<T> row = new ArrayList<T>();
+				for (int j : members) {
+					row.add(matrix.getAt(i, j));
+				}
+				dat.add(row);
+			}
+			componentClosures.set(c, new KleeneMatrix<T>(dat, zero, matrix.getOne()).close());
+		}
+		return componentClosures.get(c);
+	}
+
+	// iterative version of tarjan's algorithm, starting from root,
+	// visiting only nodes that haven't been visited by an earlier query
+	private void findComponents(int root) {
+		final Deque<Integer> tarjanStack = new ArrayDeque<Integer>();
+		final boolean[] onStack = new boolean[n];
+		// each frame is a node and the next successor to look at
+		final Deque<int[]> callStack = new ArrayDeque<int[]>();
+
+		index[root] = lowlink[root] = nextIndex++;
+		tarjanStack.push(root);
+		onStack[root] = true;
+		callStack.push(new int[] {root, 0});
+
+		while (!callStack.isEmpty()) {
+			final int[] frame = callStack.peek();
+			final int v = frame[0];
+			if (frame[1] < n) {
+				final int w = frame[1]++;
+				if (!hasEdge(v, w))
+					continue;
+				if (index[w] == -1) {
+					index[w] = lowlink[w] = nextIndex++;
+					tarjanStack.push(w);
+					onStack[w] = true;
+					callStack.push(new int[] {w, 0});
+				} else if (onStack[w]) {
+					lowlink[v] = Math.min(lowlink[v], index[w]);
+				}
+				continue;
+			}
+
+			callStack.pop();
+			if (!callStack.isEmpty()) {
+				final int parent = callStack.peek()[0];
+				lowlink[parent] = Math.min(lowlink[parent], lowlink[v]);
+			}
+			if (lowlink[v] == index[v]) {
+				final int c = componentMembers.size();
+				final List<Integer> members = new ArrayList<Integer>();
+				int w;
+				do {
+					w = tarjanStack.pop();
+					onStack[w] = false;
+					component[w] = c;
+					members.add(w);
+				} while (w != v);
+				Collections.sort(members);
+				componentMembers.add(members);
+				componentClosures.add(null);
+			}
+		}
+	}
+}
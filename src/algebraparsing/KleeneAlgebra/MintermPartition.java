@@ -0,0 +1,206 @@
+package algebraparsing.KleeneAlgebra;
+
+import java.util.*;
+
+// the coarsest partition of the code points in which every one of a set of
+// CharClasses is a union of parts, the parts being their minterms. code
+// points in the same minterm are in exactly the same classes, so any regexp
+// over those classes has the same derivative for all of them. decomposing by
+// minterm gives a derivative per minterm rather than per code point, and the
+// derivatives of a derivative are over a subset of the same atoms, so one
+// partition serves a whole derivative automaton.
+//
+// it's found with a sweep over the ends of the ranges. between consecutive
+// ends the code points are in the same classes, and intervals in the same
+// classes make up a minterm. code points in none of the classes are a
+// minterm too, unless there aren't any.
+public final class MintermPartition {
+
+	// the intervals in order, each starting where the last ended,
+	// and the minterm each belongs to
+	private final int[] intervalStarts;
+	private final int[] intervalMinterms;
+	private final int[] intervalsPerMinterm;
+	private final List<CharClass> minterms;
+
+	private MintermPartition(int[] intervalStarts, int[] intervalMinterms, List<CharClass> minterms) {
+		this.intervalStarts = intervalStarts;
+		this.intervalMinterms = intervalMinterms;
+		this.minterms = Collections.unmodifiableList(minterms);
+		this.intervalsPerMinterm = new int[minterms.size()];
+		for (int minterm : intervalMinterms) {
+			++intervalsPerMinterm[minterm];
+		}
+	}
+
+	public static MintermPartition of(Collection<CharClass> classes) {
+		final List<CharClass> distinct = new ArrayList<CharClass>(new LinkedHashSet<CharClass>(classes));
+		// an event is a position, the class entered or left there, and
+		// whether it's entered, packed in a long so they sort by position
+		final List<Long> events = new ArrayList<Long>();
+		for (int c = 0; c < distinct.size(); ++c) {
+			final CharClass cls = distinct.get(c);
+			for (int i = 0; i < cls.rangeCount(); ++i) {
+				events.add(((long) cls.rangeStart(i) << 32) | ((long) c << 1) | 1);
+				if (cls.rangeEnd(i) < CharClass.MAX_CODE_POINT)
+					events.add(((long) (cls.rangeEnd(i) + 1) << 32) | ((long) c << 1));
+			}
+		}
+		Collections.sort(events);
+
+		final BitSet active = new BitSet(distinct.size());
+		final Map<BitSet, Integer> mintermIds = new HashMap<BitSet, Integer>();
+		final List<Integer> starts = new ArrayList<Integer>();
+		final List<Integer> ids = new ArrayList<Integer>();
+		int e = 0;
+		int position = 0;
+		while (true) {
+			while (e < events.size() && (int) (events.get(e) >>> 32) == position) {
+				final long event = events.get(e++);
+				active.set((int) (event & 0xffffffffL) >>> 1, (event & 1) != 0);
+			}
+			Integer id = mintermIds.get(active);
+			if (id == null) {
+				id = mintermIds.size();
+				mintermIds.put((BitSet) active.clone(), id);
+			}
+			// a boundary that doesn't change the classes doesn't end the interval
+			if (ids.isEmpty() || !ids.get(ids.size() - 1).equals(id)) {
+				starts.add(position);
+				ids.add(id);
+			}
+			if (e == events.size())
+				break;
+			position = (int) (events.get(e) >>> 32);
+		}
+
+		final int[] intervalStarts = new int[starts.size()];
+		final int[] intervalMinterms = new int[ids.size()];
+		final List<List<Integer>> rangesByMinterm = new ArrayList<List<Integer>>();
+		for (int m = 0; m < mintermIds.size(); ++m) {
+			rangesByMinterm.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < starts.size(); ++i) {
+			intervalStarts[i] = starts.get(i);
+			intervalMinterms[i] = ids.get(i);
+			final List<Integer> ranges = rangesByMinterm.get(ids.get(i));
+			ranges.add(starts.get(i));
+			ranges.add(i + 1 < starts.size() ? starts.get(i + 1) - 1 : CharClass.MAX_CODE_POINT);
+		}
+		final List<CharClass> minterms = new ArrayList<CharClass>(rangesByMinterm.size());
+		for (List<Integer> ranges : rangesByMinterm) {
+			final int[] array = new int[ranges.size()];
+			for (int i = 0; i < array.length; ++i) {
+				array[i] = ranges.get(i);
+			}
+			minterms.add(CharClass.fromRanges(array));
+		}
+		return new MintermPartition(intervalStarts, intervalMinterms, minterms);
+	}
+
+	// the partition for the atoms of the given regexps
+	public static MintermPartition forRegexps(Iterable<? extends RegularExpression<CharClass>> roots) {
+		final Set<RegularExpression<CharClass>> seen =
+				Collections.newSetFromMap(new IdentityHashMap<RegularExpression<CharClass>, Boolean>());
+		final Set<CharClass> atoms = new LinkedHashSet<CharClass>();
+		final Deque<RegularExpression<CharClass>> stack = new ArrayDeque<RegularExpression<CharClass>>();
+		for (RegularExpression<CharClass> root : roots) {
+			stack.push(root);
+		}
+		while (!stack.isEmpty()) {
+			final RegularExpression<CharClass> regexp = stack.pop();
+			if (!seen.add(regexp))
+				continue;
+			if (regexp.kind() == RegularExpression.Kind.ATOM)
+				atoms.add(regexp.atomValue());
+			for (RegularExpression<CharClass> child : regexp.children()) {
+				stack.push(child);
+			}
+		}
+		return of(atoms);
+	}
+
+	public int size() {
+		return minterms.size();
+	}
+
+	public CharClass minterm(int id) {
+		return minterms.get(id);
+	}
+
+	public List<CharClass> minterms() {
+		return minterms;
+	}
+
+	public int intervalCount() {
+		return intervalStarts.length;
+	}
+
+	public int mintermOf(int codePoint) {
+		if (codePoint < 0 || codePoint > CharClass.MAX_CODE_POINT)
+			throw new IllegalArgumentException("not a code point: " + codePoint);
+		return intervalMinterms[intervalOf(codePoint)];
+	}
+
+	// the interval the code point is in
+	private int intervalOf(int codePoint) {
+		int lo = 0, hi = intervalStarts.length - 1;
+		while (lo < hi) {
+			final int mid = (lo + hi + 1) >>> 1;
+			if (intervalStarts[mid] <= codePoint)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
+	}
+
+	private int intervalEnd(int interval) {
+		return interval + 1 < intervalStarts.length ? intervalStarts[interval + 1] - 1 : CharClass.MAX_CODE_POINT;
+	}
+
+	// the ids of the minterms that make up the class, which must be a union of them
+	public int[] mintermsOf(CharClass cls) {
+		final Map<Integer, Integer> intervalsSeen = new LinkedHashMap<Integer, Integer>();
+		for (int r = 0; r < cls.rangeCount(); ++r) {
+			int interval = intervalOf(cls.rangeStart(r));
+			if (intervalStarts[interval] != cls.rangeStart(r))
+				throw new IllegalArgumentException(cls + " isn't a union of minterms of this partition");
+			while (true) {
+				final Integer count = intervalsSeen.get(intervalMinterms[interval]);
+				intervalsSeen.put(intervalMinterms[interval], count == null ? 1 : count + 1);
+				if (intervalEnd(interval) >= cls.rangeEnd(r))
+					break;
+				++interval;
+			}
+			if (intervalEnd(interval) != cls.rangeEnd(r))
+				throw new IllegalArgumentException(cls + " isn't a union of minterms of this partition");
+		}
+		final int[] ret = new int[intervalsSeen.size()];
+		int i = 0;
+		for (Map.Entry<Integer, Integer> entry : intervalsSeen.entrySet()) {
+			// only part of a minterm is in the class
+			if (entry.getValue() != intervalsPerMinterm[entry.getKey()])
+				throw new IllegalArgumentException(cls + " isn't a union of minterms of this partition");
+			ret[i++] = entry.getKey();
+		}
+		return ret;
+	}
+
+	// like regexp.decompose(), but with a term per minterm instead of per atom:
+	// the term for a minterm is the sum of the terms for the atoms containing
+	// it. the atoms of the regexp must be unions of minterms, as they are if
+	// the partition came from forRegexps() on it or anything it's derived from
+	public DecomposedRegexp<CharClass> decompose(RegularExpression<CharClass> regexp) {
+		final DecomposedRegexp<CharClass> byAtom = regexp.decompose();
+		final Map<CharClass, RegularExpression<CharClass>> terms = new HashMap<CharClass, RegularExpression<CharClass>>();
+		for (Map.Entry<CharClass, RegularExpression<CharClass>> entry : byAtom.nonemptyTerms().entrySet()) {
+			for (int id : mintermsOf(entry.getKey())) {
+				final CharClass minterm = minterms.get(id);
+				final RegularExpression<CharClass> existing = terms.get(minterm);
+				terms.put(minterm, existing == null ? entry.getValue() : existing.add(entry.getValue()));
+			}
+		}
+		return new DecomposedRegexp<CharClass>(terms, byAtom.hasEmptyString());
+	}
+}
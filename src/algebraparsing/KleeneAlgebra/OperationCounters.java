@@ -0,0 +1,94 @@
+package algebraparsing.KleeneAlgebra;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// counts of operations done in a Kleene algebra, striped so that threads
+// counting at the same time don't contend on a single cache line.
+// see Instrumentation for where the counts come from.
+public class OperationCounters implements OperationCountersMXBean {
+
+	public static enum Operation { ADD, MUL, CLOSE, DECOMPOSE, NODE }
+
+	private static final Operation[] OPERATIONS = Operation.values();
+
+	private final LongAdder[] counters = new LongAdder[OPERATIONS.length];
+
+	public OperationCounters() {
+		for (int i = 0; i < counters.length; ++i) {
+			counters[i] = new LongAdder();
+		}
+	}
+
+	public void increment(Operation operation) {
+		counters[operation.ordinal()].increment();
+	}
+
+	public long get(Operation operation) {
+		return counters[operation.ordinal()].sum();
+	}
+
+	@Override public long getAdds() { return get(Operation.ADD); }
+	@Override public long getMuls() { return get(Operation.MUL); }
+	@Override public long getCloses() { return get(Operation.CLOSE); }
+	@Override public long getDecomposes() { return get(Operation.DECOMPOSE); }
+	@Override public long getNodesCreated() { return get(Operation.NODE); }
+
+	// not atomic with respect to threads that are counting at the same time
+	@Override
+	public void reset() {
+		for (LongAdder counter : counters) {
+			counter.reset();
+		}
+	}
+
+	public Snapshot snapshot() {
+		final long[] counts = new long[counters.length];
+		for (int i = 0; i < counts.length; ++i) {
+			counts[i] = counters[i].sum();
+		}
+		return new Snapshot(counts);
+	}
+
+	// counts at some point in time, or the difference between two such points
+	public static final class Snapshot {
+
+		private final long[] counts;
+
+		Snapshot(long[] counts) {
+			if (counts.length != OPERATIONS.length)
+				throw new IllegalArgumentException("wrong number of counts");
+			this.counts = counts;
+		}
+
+		public long get(Operation operation) {
+			return counts[operation.ordinal()];
+		}
+
+		public long total() {
+			long ret = 0;
+			for (long count : counts) {
+				ret += count;
+			}
+			return ret;
+		}
+
+		public Snapshot minus(Snapshot earlier) {
+			final long[] ret = new long[counts.length];
+			for (int i = 0; i < ret.length; ++i) {
+				ret[i] = counts[i] - earlier.counts[i];
+			}
+			return new Snapshot(ret);
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder();
+			for (Operation operation : OPERATIONS) {
+				if (sb.length() > 0)
+					sb.append(" ");
+				sb.append(operation.name().toLowerCase() + "=" + counts[operation.ordinal()]);
+			}
+			return sb.toString();
+		}
+	}
+}
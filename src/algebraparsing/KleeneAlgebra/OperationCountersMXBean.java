@@ -0,0 +1,11 @@
+package algebraparsing.KleeneAlgebra;
+
+// what OperationCounters exposes over jmx
+public interface OperationCountersMXBean {
+	public long getAdds();
+	public long getMuls();
+	public long getCloses();
+	public long getDecomposes();
+	public long getNodesCreated();
+	public void reset();
+}
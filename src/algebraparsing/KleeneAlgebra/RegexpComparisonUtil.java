@@ -181,6 +181,7 @@ public class RegexpComparisonUtil {
 		}
 
 		set.add(pair);
+		CompileContext.stateCreated();
 		if (!queue.isEmpty())
 			stack.push(new StackEl<T>(queue));
 
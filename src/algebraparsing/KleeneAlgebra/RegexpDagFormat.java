@@ -0,0 +1,346 @@
+package algebraparsing.KleeneAlgebra;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+// writes regexps, and matrices of them, as numbered let bindings, one for
+// each distinct node, whose operands refer back to earlier bindings. a node
+// shared between subexpressions (or between entries of a matrix) is written
+// once however often it's referenced, so the output is linear in the number
+// of distinct nodes. toString() on the other hand expands the whole tree,
+// which for the closure of a recursive grammar's matrix is exponential.
+//
+// the format is line based, a header, the bindings and then the result:
+//   regexp-dag 1
+//   let 0 atom a
+//   let 1 eps
+//   let 2 star 0
+//   let 3 cat 2 1
+//   regexp 3
+// the other bindings are "empty" and "union l r". a matrix is written as
+// "matrix m n" instead of the regexp line, followed by m lines of "row" and
+// n ids. atoms are turned into text by a function the caller gives,
+// with backslashes and line breaks escaped, and read back by its inverse.
+//
+// reading builds the expressions again with the algebra operations, so the
+// result equals what was written unless the reading side simplifies more
+// than the writing side did. malformed input is an IOException.
+public class RegexpDagFormat {
+
+	public static final String HEADER = "regexp-dag";
+	public static final int VERSION = 1;
+
+	// can't instantiate
+	private RegexpDagFormat() {}
+
+	public static <T> void write(RegularExpression<T> regexp, Function<? super T, String> atoms, Writer out)
+			throws IOException {
+		final Bindings<T> bindings = new Bindings<T>(atoms, out);
+		out.write(HEADER + " " + VERSION + "\n");
+		final int id = bindings.bind(regexp);
+		out.write("regexp " + id + "\n");
+		out.flush();
+	}
+
+	public static <T> void write(KleeneMatrix<RegularExpression<T>> matrix, Function<? super T, String> atoms,
+			Writer out) throws IOException {
+		final Bindings<T> bindings = new Bindings<T>(atoms, out);
+		out.write(HEADER + " " + VERSION + "\n");
+		final int[][] ids = new int[matrix.getM()][matrix.getN()];
+		for (int i = 0; i < matrix.getM(); ++i) {
+			for (int j = 0; j < matrix.getN(); ++j) {
+				ids[i][j] = bindings.bind(matrix.getAt(i, j));
+			}
+		}
+		out.write("matrix " + matrix.getM() + " " + matrix.getN() + "\n");
+		for (int[] row : ids) {
+			final StringBuilder line = new StringBuilder("row");
+			for (int id : row) {
+				line.append(' ').append(id);
+			}
+			out.write(line.append('\n').toString());
+		}
+		out.flush();
+	}
+
+	// the channel is left open
+	public static <T> void write(RegularExpression<T> regexp, Function<? super T, String> atoms,
+			WritableByteChannel channel) throws IOException {
+		write(regexp, atoms, channelWriter(channel));
+	}
+
+	public static <T> void write(KleeneMatrix<RegularExpression<T>> matrix, Function<? super T, String> atoms,
+			WritableByteChannel channel) throws IOException {
+		write(matrix, atoms, channelWriter(channel));
+	}
+
+	public static <T> RegularExpression<T> readRegexp(Reader in, Function<String, ? extends T> atoms)
+			throws IOException {
+		final Parser<T> parser = new Parser<T>(in, atoms);
+		final String[] words = parser.readBindings();
+		if (!words[0].equals("regexp") || words.length != 2)
+			throw parser.error("expected \"regexp id\"");
+		final RegularExpression<T> ret = parser.ref(words[1]);
+		parser.expectEnd();
+		return ret;
+	}
+
+	public static <T> KleeneMatrix<RegularExpression<T>> readMatrix(Reader in, Function<String, ? extends T> atoms)
+			throws IOException {
+		final Parser<T> parser = new Parser<T>(in, atoms);
+		final String[] words = parser.readBindings();
+		if (!words[0].equals("matrix") || words.length != 3)
+			throw parser.error("expected \"matrix m n\"");
+		final int m = parser.number(words[1]);
+		final int n = parser.number(words[2]);
+		if (m == 0 || n == 0)
+			throw parser.error("matrix must not be empty");
+		final List<List<RegularExpression<T>>> data = new ArrayList<List<RegularExpression<T>>>(m);
+		for (int i = 0; i < m; ++i) {
+			final String[] row = parser.nextWords();
+			if (!row[0].equals("row") || row.length != n + 1)
+				throw parser.error("expected a row of " + n + " ids");
+			final List<RegularExpression<T>> entries = new ArrayList<RegularExpression<T>>(n);
+			for (int j = 1; j <= n; ++j) {
+				entries.add(parser.ref(row[j]));
+			}
+			data.add(entries);
+		}
+		parser.expectEnd();
+		return new KleeneMatrix<RegularExpression<T>>(data,
+				RegularExpression.<T>emptyRegexp(), RegularExpression.<T>emptyString());
+	}
+
+	public static <T> RegularExpression<T> readRegexp(ReadableByteChannel channel,
+			Function<String, ? extends T> atoms) throws IOException {
+		return readRegexp(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1), atoms);
+	}
+
+	public static <T> KleeneMatrix<RegularExpression<T>> readMatrix(ReadableByteChannel channel,
+			Function<String, ? extends T> atoms) throws IOException {
+		return readMatrix(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1), atoms);
+	}
+
+	private static Writer channelWriter(WritableByteChannel channel) {
+		return new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
+	}
+
+	private static String operator(RegularExpression.Kind kind) {
+		switch (kind) {
+		case ATOM: return "atom";
+		case EMPTY_STRING: return "eps";
+		case EMPTY: return "empty";
+		case CLOSURE: return "star";
+		case CAT: return "cat";
+		case UNION: return "union";
+		default: throw new RuntimeException("unknown kind " + kind);
+		}
+	}
+
+	private static String escape(String text) {
+		final StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); ++i) {
+			final char c = text.charAt(i);
+			if (c == '\\')
+				sb.append("\\\\");
+			else if (c == '\n')
+				sb.append("\\n");
+			else if (c == '\r')
+				sb.append("\\r");
+			else
+				sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	// the nodes written so far and their ids
+	private static final class Bindings<T> {
+		private final Function<? super T, String> atoms;
+		private final Writer out;
+		private final Map<RegularExpression<?>, Integer> ids = new IdentityHashMap<RegularExpression<?>, Integer>();
+
+		Bindings(Function<? super T, String> atoms, Writer out) {
+			this.atoms = atoms;
+			this.out = out;
+		}
+
+		// writes the nodes of regexp that aren't written yet, children
+		// before their parents, and returns the id of regexp itself.
+		// iterative, since cat and union chains get very long
+		int bind(RegularExpression<T> regexp) throws IOException {
+			final Deque<RegularExpression<T>> stack = new ArrayDeque<RegularExpression<T>>();
+			stack.push(regexp);
+			while (!stack.isEmpty()) {
+				final RegularExpression<T> top = stack.peek();
+				if (ids.containsKey(top)) {
+					stack.pop();
+					continue;
+				}
+				boolean ready = true;
+				for (RegularExpression<T> child : top.children()) {
+					if (!ids.containsKey(child)) {
+						stack.push(child);
+						ready = false;
+					}
+				}
+				if (ready) {
+					stack.pop();
+					writeBinding(top);
+				}
+			}
+			return ids.get(regexp);
+		}
+
+		private void writeBinding(RegularExpression<T> regexp) throws IOException {
+			final int id = ids.size();
+			final StringBuilder line = new StringBuilder("let ").append(id).append(' ').append(operator(regexp.kind()));
+			if (regexp.kind() == RegularExpression.Kind.ATOM)
+				line.append(' ').append(escape(atoms.apply(regexp.atomValue())));
+			for (RegularExpression<T> child : regexp.children()) {
+				line.append(' ').append(ids.get(child));
+			}
+			out.write(line.append('\n').toString());
+			ids.put(regexp, id);
+		}
+	}
+
+	private static final class Parser<T> {
+		private final BufferedReader in;
+		private final Function<String, ? extends T> atoms;
+		private final List<RegularExpression<T>> bound = new ArrayList<RegularExpression<T>>();
+		private int lineNumber = 0;
+
+		Parser(Reader in, Function<String, ? extends T> atoms) {
+			this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+			this.atoms = atoms;
+		}
+
+		IOException error(String message) {
+			return new IOException("line " + lineNumber + ": " + message);
+		}
+
+		private String nextLine() throws IOException {
+			final String line = in.readLine();
+			if (line == null)
+				throw error("unexpected end of input");
+			++lineNumber;
+			return line;
+		}
+
+		String[] nextWords() throws IOException {
+			return nextLine().split(" ", -1);
+		}
+
+		void expectEnd() throws IOException {
+			if (in.readLine() != null) {
+				++lineNumber;
+				throw error("unexpected input after the result");
+			}
+		}
+
+		int number(String word) throws IOException {
+			try {
+				final int ret = Integer.parseInt(word);
+				if (ret < 0)
+					throw error("negative number " + word);
+				return ret;
+			} catch (NumberFormatException e) {
+				throw error("expected a number, found \"" + word + "\"");
+			}
+		}
+
+		RegularExpression<T> ref(String word) throws IOException {
+			final int id = number(word);
+			if (id >= bound.size())
+				throw error("reference to unbound id " + id);
+			return bound.get(id);
+		}
+
+		// reads the header and the bindings, and returns the words of the
+		// line after them
+		String[] readBindings() throws IOException {
+			if (!nextLine().equals(HEADER + " " + VERSION))
+				throw error("expected \"" + HEADER + " " + VERSION + "\"");
+			while (true) {
+				final String line = nextLine();
+				if (!line.startsWith("let "))
+					return line.split(" ", -1);
+				bind(line);
+			}
+		}
+
+		private void bind(String line) throws IOException {
+			// the atom text can hold spaces, so only split off the operator
+			final String[] head = line.split(" ", 4);
+			if (head.length < 3)
+				throw error("malformed binding");
+			if (number(head[1]) != bound.size())
+				throw error("expected binding " + bound.size());
+			final String operator = head[2];
+			final RegularExpression<T> regexp;
+			if (operator.equals("atom")) {
+				if (head.length != 4)
+					throw error("atom without text");
+				regexp = RegularExpression.<T>fromAtom(atoms.apply(unescape(head[3])));
+			} else {
+				final String[] operands = head.length == 4 ? head[3].split(" ", -1) : new String[0];
+				if (operator.equals("eps")) {
+					arity(operands, 0);
+					regexp = RegularExpression.emptyString();
+				} else if (operator.equals("empty")) {
+					arity(operands, 0);
+					regexp = RegularExpression.emptyRegexp();
+				} else if (operator.equals("star")) {
+					arity(operands, 1);
+					regexp = ref(operands[0]).close();
+				} else if (operator.equals("cat")) {
+					arity(operands, 2);
+					regexp = ref(operands[0]).mul(ref(operands[1]));
+				} else if (operator.equals("union")) {
+					arity(operands, 2);
+					regexp = ref(operands[0]).add(ref(operands[1]));
+				} else {
+					throw error("unknown operator \"" + operator + "\"");
+				}
+			}
+			bound.add(regexp);
+		}
+
+		private void arity(String[] operands, int expected) throws IOException {
+			if (operands.length != expected)
+				throw error("expected " + expected + " operands, found " + operands.length);
+		}
+
+		private String unescape(String text) throws IOException {
+			final StringBuilder sb = new StringBuilder(text.length());
+			for (int i = 0; i < text.length(); ++i) {
+				final char c = text.charAt(i);
+				if (c != '\\') {
+					sb.append(c);
+					continue;
+				}
+				if (++i == text.length())
+					throw error("dangling escape");
+				final char escaped = text.charAt(i);
+				if (escaped == '\\')
+					sb.append('\\');
+				else if (escaped == 'n')
+					sb.append('\n');
+				else if (escaped == 'r')
+					sb.append('\r');
+				else
+					throw error("unknown escape \\" + escaped);
+			}
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package algebraparsing.KleeneAlgebra;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// controls the simplification RegularExpression does as it builds
+// expressions, and can simplify an existing expression as a separate pass.
+//
+// the rules are identities of Kleene algebra that only ever shrink an
+// expression:
+//   x*x* = x*            (and x*(x*y) = x*y)
+//   a + a = a            (near the front of a chain of unions when
+//                         building, anywhere in it in simplify())
+//   x* + e = x*          (e being the empty string)
+//   (e + x)* = x*
+//   (x* + y)* = (x + y)*
+// together with the ones that were always applied, (x*)* = x*, e* = e,
+// and the identities of the empty string and empty regexp.
+//
+// simplification at construction changes what existing code builds (and so
+// prints and writes out), so it's off unless enabled. simplify() applies the
+// rules whatever the setting.
+public class RegexpSimplifier {
+
+	public static enum Rule {
+		STAR_STAR, IDEMPOTENCE, EMPTY_STRING_ABSORBED, STAR_DROPS_EMPTY_STRING, STAR_OF_STARRED_SUMMAND
+	}
+
+	private static volatile boolean enabled = false;
+
+	// threads running simplify(), so the rules apply on those threads
+	// even when construction time simplification is off
+	private static final AtomicInteger FORCING = new AtomicInteger();
+	private static final ThreadLocal<Boolean> FORCED = new ThreadLocal<Boolean>();
+
+	private static final LongAdder[] APPLICATIONS = new LongAdder[Rule.values().length];
+	static {
+		for (int i = 0; i < APPLICATIONS.length; ++i) {
+			APPLICATIONS[i] = new LongAdder();
+		}
+	}
+
+	// can't instantiate
+	private RegexpSimplifier() {}
+
+	public static void setEnabled(boolean enabled) {
+		RegexpSimplifier.enabled = enabled;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	static boolean isActive() {
+		return enabled || FORCING.get() > 0 && FORCED.get() != null;
+	}
+
+	static void applied(Rule rule) {
+		APPLICATIONS[rule.ordinal()].increment();
+	}
+
+	// how often each rule has fired, over all threads
+	public static long applications(Rule rule) {
+		return APPLICATIONS[rule.ordinal()].sum();
+	}
+
+	public static void resetApplications() {
+		for (LongAdder counter : APPLICATIONS) {
+			counter.reset();
+		}
+	}
+
+	public static final class Report<T> {
+		public final RegularExpression<T> result;
+		// distinct nodes, as counted by RegularExpression.nodeCount()
+		public final long nodesBefore;
+		public final long nodesAfter;
+
+		private Report(RegularExpression<T> result, long nodesBefore, long nodesAfter) {
+			this.result = result;
+			this.nodesBefore = nodesBefore;
+			this.nodesAfter = nodesAfter;
+		}
+
+		public long reduction() {
+			return nodesBefore - nodesAfter;
+		}
+
+		@Override
+		public String toString() {
+			return nodesBefore + " -> " + nodesAfter + " nodes";
+		}
+	}
+
+	public static <T> Report<T> simplify(RegularExpression<T> regexp) {
+		if (regexp == null)
+			throw new IllegalArgumentException("regexp must not be null");
+		final boolean outermost = FORCED.get() == null;
+		if (outermost) {
+			FORCED.set(Boolean.TRUE);
+			FORCING.incrementAndGet();
+		}
+		final RegularExpression<T> result;
+		try {
+			result = RegularExpression.rebuildShared(regexp,
+					new IdentityHashMap<RegularExpression<?>, RegularExpression<?>>());
+		} finally {
+			if (outermost) {
+				FORCING.decrementAndGet();
+				FORCED.remove();
+			}
+		}
+		return new Report<T>(result,
+				RegularExpression.nodeCount(Collections.singletonList(regexp)),
+				RegularExpression.nodeCount(Collections.singletonList(result)));
+	}
+}
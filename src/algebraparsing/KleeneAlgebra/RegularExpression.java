@@ -2,9 +2,14 @@ package algebraparsing.KleeneAlgebra;
 
 import java.util.*;
 
+import algebraparsing.KleeneAlgebra.OperationCounters.Operation;
+
 public abstract class RegularExpression<T> implements KleeneAlgebraElement<RegularExpression<T>> {
 
-	private RegularExpression() {}
+	private RegularExpression() {
+		Instrumentation.count(Operation.NODE);
+		CompileContext.nodeCreated();
+	}
 
 	@Override
 	public RegularExpression<T> mul(RegularExpression<T> el) {
@@ -14,6 +19,11 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 			return this;
 		if (this instanceof CatRegularExpression)
 			throw new IllegalArgumentException("can't make concatenation with cat as left child");
+		if (RegexpSimplifier.isActive()) {
+			final RegularExpression<T> simplified = simplifyMul(this, el);
+			if (simplified != null)
+				return simplified;
+		}
 		return new CatRegularExpression<T>(this, el);
 	}
 	
@@ -23,15 +33,352 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 			return this;
 		if (this instanceof UnionRegularExpression)
 			throw new IllegalArgumentException("can't make union with union as left child");
+		if (RegexpSimplifier.isActive()) {
+			final RegularExpression<T> simplified = simplifyAdd(this, el);
+			if (simplified != null)
+				return simplified;
+		}
 		return new UnionRegularExpression<T>(this, el);
 	}
 	
 	@Override
 	public RegularExpression<T> close() {
+		if (RegexpSimplifier.isActive()) {
+			final RegularExpression<T> simplified = simplifyClose(this);
+			if (simplified != null)
+				return simplified;
+		}
 		return new ClosureRegularExpression<T>(this);
 	}
+	
+	// the rules below are all identities of Kleene algebra, and each one
+	// makes the result smaller. they're only tried on the node being built,
+	// relying on its children having been built the same way. each returns
+	// null if no rule applies
+	
+	// left is never a cat here
+	private static <T> RegularExpression<T> simplifyMul(RegularExpression<T> left, RegularExpression<T> right) {
+		if (left instanceof ClosureRegularExpression) {
+			// x*x* = x*
+			if (right.equals(left)) {
+				RegexpSimplifier.applied(RegexpSimplifier.Rule.STAR_STAR);
+				return left;
+			}
+			// x*(x*y) = x*y
+			if (right instanceof CatRegularExpression && ((CatRegularExpression<T>) right).leftChild.equals(left)) {
+				RegexpSimplifier.applied(RegexpSimplifier.Rule.STAR_STAR);
+				return right;
+			}
+		}
+		return null;
+	}
+	
+	// how many summands of a union chain the union rules look at when a
+	// node is added in front of it. looking at all of them would make
+	// building an n-way union quadratic, simplify() catches the rest
+	private static final int SUMMAND_SCAN_LIMIT = 16;
+	
+	// left is never a union here
+	private static <T> RegularExpression<T> simplifyAdd(RegularExpression<T> left, RegularExpression<T> right) {
+		// a + (... + a + ...) = ... + a + ..., walking the chain in place
+		RegularExpression<T> rest = right;
+		for (int i = 0; i < SUMMAND_SCAN_LIMIT; ++i) {
+			final boolean more = rest instanceof UnionRegularExpression;
+			final RegularExpression<T> summand = more ? ((UnionRegularExpression<T>) rest).leftChild : rest;
+			if (summand.equals(left)) {
+				RegexpSimplifier.applied(RegexpSimplifier.Rule.IDEMPOTENCE);
+				return right;
+			}
+			if (!more)
+				break;
+			rest = ((UnionRegularExpression<T>) rest).rightChild;
+		}
+		// x* + [empty string] = x*, as x* already has the empty string
+		if (left instanceof ClosureRegularExpression && right.equals(emptyString())) {
+			RegexpSimplifier.applied(RegexpSimplifier.Rule.EMPTY_STRING_ABSORBED);
+			return left;
+		}
+		return null;
+	}
+	
+	// the empty string is never the left side of a union, so it's handled here
+	private static <T> RegularExpression<T> simplifyAddEmptyString(RegularExpression<T> right) {
+		RegularExpression<T> rest = right;
+		for (int i = 0; i < SUMMAND_SCAN_LIMIT; ++i) {
+			final boolean more = rest instanceof UnionRegularExpression;
+			final RegularExpression<T> summand = more ? ((UnionRegularExpression<T>) rest).leftChild : rest;
+			if (summand instanceof ClosureRegularExpression || summand.equals(emptyString())) {
+				RegexpSimplifier.applied(RegexpSimplifier.Rule.EMPTY_STRING_ABSORBED);
+				return right;
+			}
+			if (!more)
+				break;
+			rest = ((UnionRegularExpression<T>) rest).rightChild;
+		}
+		return null;
+	}
+	
+	// child is never a closure, the empty string or the empty regexp here
+	private static <T> RegularExpression<T> simplifyClose(RegularExpression<T> child) {
+		if (!(child instanceof UnionRegularExpression))
+			return null;
+		// (e + x)* = x*, and (x* + y)* = (x + y)*
+		final List<RegularExpression<T>> kept = new ArrayList<RegularExpression<T>>();
+		boolean changed = false;
+		for (RegularExpression<T> summand : summands(child)) {
+			if (summand.equals(emptyString())) {
+				RegexpSimplifier.applied(RegexpSimplifier.Rule.STAR_DROPS_EMPTY_STRING);
+				changed = true;
+			} else if (summand instanceof ClosureRegularExpression) {
+				RegexpSimplifier.applied(RegexpSimplifier.Rule.STAR_OF_STARRED_SUMMAND);
+				kept.add(((ClosureRegularExpression<T>) summand).child);
+				changed = true;
+			} else {
+				kept.add(summand);
+			}
+		}
+		if (!changed)
+			return null;
+		RegularExpression<T> ret = emptyRegexp();
+		for (int i = kept.size() - 1; i >= 0; --i) {
+			ret = kept.get(i).add(ret);
+		}
+		return ret.close();
+	}
+	
+	// the summands of a right nested chain of unions
+	private static <T> List<RegularExpression<T>> summands(RegularExpression<T> regexp) {
+		final List<RegularExpression<T>> ret = new ArrayList<RegularExpression<T>>();
+		while (regexp instanceof UnionRegularExpression) {
+			final UnionRegularExpression<T> union = (UnionRegularExpression<T>) regexp;
+			ret.add(union.leftChild);
+			regexp = union.rightChild;
+		}
+		ret.add(regexp);
+		return ret;
+	}
+	
+	// the factors of a right nested chain of cats
+	private static <T> List<RegularExpression<T>> factors(RegularExpression<T> regexp) {
+		final List<RegularExpression<T>> ret = new ArrayList<RegularExpression<T>>();
+		while (regexp instanceof CatRegularExpression) {
+			final CatRegularExpression<T> cat = (CatRegularExpression<T>) regexp;
+			ret.add(cat.leftChild);
+			regexp = cat.rightChild;
+		}
+		ret.add(regexp);
+		return ret;
+	}
+	
+	// chains of cats and unions get as long as the productions they come from,
+	// so nothing below walks them by recursion: equality and printing use an
+	// explicit stack, and decomposition and rebuilding loop along the chain
+	// (only recursing into the factors or summands themselves)
+	
+	private static boolean structurallyEqual(RegularExpression<?> regexp, Object other) {
+		if (!(other instanceof RegularExpression))
+			return false;
+		final Deque<RegularExpression<?>> stack = new ArrayDeque<RegularExpression<?>>();
+		stack.push(regexp);
+		stack.push((RegularExpression<?>) other);
+		while (!stack.isEmpty()) {
+			final RegularExpression<?> y = stack.pop();
+			final RegularExpression<?> x = stack.pop();
+			if (x == y)
+				continue;
+			// hashes are cached, so this rules out most mismatches cheaply
+			if (x.getClass() != y.getClass() || x.hashCode() != y.hashCode())
+				return false;
+			if (x instanceof AtomRegularExpression) {
+				if (!((AtomRegularExpression<?>) x).atom.equals(((AtomRegularExpression<?>) y).atom))
+					return false;
+				continue;
+			}
+			final List<? extends RegularExpression<?>> xs = x.children();
+			final List<? extends RegularExpression<?>> ys = y.children();
+			for (int i = xs.size() - 1; i >= 0; --i) {
+				stack.push(xs.get(i));
+				stack.push(ys.get(i));
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		final Deque<Object> stack = new ArrayDeque<Object>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			final Object top = stack.pop();
+			if (top instanceof RegularExpression)
+				((RegularExpression<?>) top).pushParts(stack);
+			else
+				sb.append((String) top);
+		}
+		return sb.toString();
+	}
+	
+	// pushes the pieces of the string form of this regexp, last piece first.
+	// strings are printed as they are, regexps are expanded in turn
+	abstract void pushParts(Deque<Object> stack);
+	
+	private static void pushParenthesized(RegularExpression<?> regexp, String after, Deque<Object> stack) {
+		stack.push(")" + after);
+		stack.push(regexp);
+		stack.push("(");
+	}
+	
+	// all the terms of left followed by those of right, those for the
+	// same atom being added together
+	private static <T> DecomposedRegexp<T> unionOf(DecomposedRegexp<T> left, DecomposedRegexp<T> right) {
+		final Map<T, RegularExpression<T>> terms = new HashMap<T, RegularExpression<T>>(left.nonemptyTerms());
+		for (Map.Entry<T, RegularExpression<T>> entry : right.nonemptyTerms().entrySet()) {
+			final RegularExpression<T> existing = terms.get(entry.getKey());
+			terms.put(entry.getKey(), existing == null ? entry.getValue() : existing.add(entry.getValue()));
+		}
+		return new DecomposedRegexp<T>(terms, left.hasEmptyString() || right.hasEmptyString());
+	}
+	
+	// the terms of decomposed each followed by rest, without the empty string
+	private static <T> DecomposedRegexp<T> followedBy(DecomposedRegexp<T> decomposed, RegularExpression<T> rest) {
+		final Map<T, RegularExpression<T>> terms = new HashMap<T, RegularExpression<T>>();
+		for (Map.Entry<T, RegularExpression<T>> entry : decomposed.nonemptyTerms().entrySet()) {
+			terms.put(entry.getKey(), entry.getValue().mul(rest));
+		}
+		return new DecomposedRegexp<T>(terms, false);
+	}
+	
+	// builds this regexp again from its atoms, applying the simplification
+	// rules throughout. subexpressions that are shared stay shared
+	RegularExpression<T> rebuild(Map<RegularExpression<?>, RegularExpression<?>> done) {
+		return this;
+	}
+	
+	@SuppressWarnings("unchecked")
+	static <T> RegularExpression<T> rebuildShared(RegularExpression<T> regexp,
+			Map<RegularExpression<?>, RegularExpression<?>> done) {
+		RegularExpression<T> ret = (RegularExpression<T>) done.get(regexp);
+		if (ret == null) {
+			ret = regexp.rebuild(done);
+			done.put(regexp, ret);
+		}
+		return ret;
+	}
 
-	public abstract DecomposedRegexp<T> decompose();
+	// the regexp for the reversed language: cat chains are turned around,
+	// everything else keeps its shape. this is an anti-homomorphism, so
+	// r.mul(s).reverse() is equivalent to s.reverse().mul(r.reverse()),
+	// which lets a system that multiplies from the right be solved in the
+	// ordinary algebra. shared subexpressions are only reversed once
+	public RegularExpression<T> reverse() {
+		final Map<RegularExpression<T>, RegularExpression<T>> done =
+				new IdentityHashMap<RegularExpression<T>, RegularExpression<T>>();
+		// operands are reversed before the node they belong to, with an
+		// explicit stack since chains get as long as the productions
+		final Deque<RegularExpression<T>> stack = new ArrayDeque<RegularExpression<T>>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			final RegularExpression<T> top = stack.peek();
+			if (done.containsKey(top)) {
+				stack.pop();
+				continue;
+			}
+			final List<RegularExpression<T>> operands = reversalOperands(top);
+			boolean ready = true;
+			for (RegularExpression<T> operand : operands) {
+				if (!done.containsKey(operand)) {
+					stack.push(operand);
+					ready = false;
+				}
+			}
+			if (!ready)
+				continue;
+			stack.pop();
+			RegularExpression<T> reversed;
+			switch (top.kind()) {
+			case CLOSURE:
+				reversed = done.get(operands.get(0)).close();
+				break;
+			case CAT:
+				// c1 c2 ... cn becomes cn ... c2 c1, built from the right so
+				// that each mul only puts a factor in front
+				reversed = emptyString();
+				for (RegularExpression<T> factor : operands) {
+					reversed = done.get(factor).mul(reversed);
+				}
+				break;
+			case UNION:
+				reversed = emptyRegexp();
+				for (int i = operands.size() - 1; i >= 0; --i) {
+					reversed = done.get(operands.get(i)).add(reversed);
+				}
+				break;
+			default:
+				reversed = top;
+			}
+			done.put(top, reversed);
+		}
+		return done.get(this);
+	}
+	
+	// the factors of a cat chain or summands of a union chain rather than
+	// its binary children, so a chain is reversed as a whole
+	private static <T> List<RegularExpression<T>> reversalOperands(RegularExpression<T> regexp) {
+		switch (regexp.kind()) {
+		case CAT:
+			return factors(regexp);
+		case UNION:
+			return summands(regexp);
+		default:
+			return regexp.children();
+		}
+	}
+	
+	public final DecomposedRegexp<T> decompose() {
+		Instrumentation.count(Operation.DECOMPOSE);
+		return decomposeNode();
+	}
+	
+	abstract DecomposedRegexp<T> decomposeNode();
+	
+	// for walking the tree, as automaton constructions do: the kind of
+	// node, its immediate subexpressions (the child of a closure, the left
+	// and right of a cat or union) and for an atom, the atom
+	public static enum Kind { ATOM, EMPTY_STRING, EMPTY, CLOSURE, CAT, UNION }
+	
+	public abstract Kind kind();
+	
+	public List<RegularExpression<T>> children() {
+		return Collections.emptyList();
+	}
+	
+	public T atomValue() {
+		throw new IllegalStateException("not an atom");
+	}
+	
+	// whether the empty string matches, known without decomposing
+	public abstract boolean hasEmptyString();
+	
+	// the number of distinct regexp objects reachable from the given ones,
+	// subexpressions that are shared are only counted once
+	public static long nodeCount(Iterable<? extends RegularExpression<?>> roots) {
+		final Set<RegularExpression<?>> seen =
+				Collections.newSetFromMap(new IdentityHashMap<RegularExpression<?>, Boolean>());
+		final Deque<RegularExpression<?>> stack = new ArrayDeque<RegularExpression<?>>();
+		for (RegularExpression<?> root : roots) {
+			stack.push(root);
+		}
+		while (!stack.isEmpty()) {
+			final RegularExpression<?> regexp = stack.pop();
+			if (!seen.add(regexp))
+				continue;
+			for (RegularExpression<?> child : regexp.children()) {
+				stack.push(child);
+			}
+		}
+		return seen.size();
+	}
 	
 	
 	private static class AtomRegularExpression<T> extends RegularExpression<T> {
@@ -44,8 +391,23 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 		}
 		
 		@Override
-		public String toString() {
-			return atom.toString();
+		public Kind kind() {
+			return Kind.ATOM;
+		}
+		
+		@Override
+		public boolean hasEmptyString() {
+			return false;
+		}
+		
+		@Override
+		public T atomValue() {
+			return atom;
+		}
+		
+		@Override
+		void pushParts(Deque<Object> stack) {
+			stack.push(atom.toString());
 		}
 		
 		@Override
@@ -65,7 +427,7 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 		}
 
 		@Override
-		public DecomposedRegexp<T> decompose() {
+		DecomposedRegexp<T> decomposeNode() {
 			Map<T, RegularExpression<T>> map = new HashMap<T, RegularExpression<T>>();
 			map.put(atom, RegularExpression.emptyString());
 			return new DecomposedRegexp<T>(map, false);
@@ -84,6 +446,11 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 		public RegularExpression<T> add(RegularExpression<T> el) {
 			if (this.equals(el))
 				return this;
+			if (RegexpSimplifier.isActive()) {
+				final RegularExpression<T> simplified = simplifyAddEmptyString(el);
+				if (simplified != null)
+					return simplified;
+			}
 			return el.add(this);
 		}
 
@@ -98,8 +465,18 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 		}
 		
 		@Override
-		public String toString() {
-			return STRREP;
+		public Kind kind() {
+			return Kind.EMPTY_STRING;
+		}
+		
+		@Override
+		public boolean hasEmptyString() {
+			return true;
+		}
+		
+		@Override
+		void pushParts(Deque<Object> stack) {
+			stack.push(STRREP);
 		}
 		
 		@Override
@@ -113,7 +490,7 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 		}
 
 		@Override
-		public DecomposedRegexp<T> decompose() {
+		DecomposedRegexp<T> decomposeNode() {
 			return new DecomposedRegexp<T>(Collections.emptyMap(), true);
 		}
 	}
@@ -145,8 +522,18 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 		}
 		
 		@Override
-		public String toString() {
-			return STRREP;
+		public Kind kind() {
+			return Kind.EMPTY;
+		}
+		
+		@Override
+		public boolean hasEmptyString() {
+			return false;
+		}
+		
+		@Override
+		void pushParts(Deque<Object> stack) {
+			stack.push(STRREP);
 		}
 		
 		@Override
@@ -160,7 +547,7 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 		}
 		
 		@Override
-		public DecomposedRegexp<T> decompose() {
+		DecomposedRegexp<T> decomposeNode() {
 			return new DecomposedRegexp<T>(Collections.emptyMap(), false);
 		}
 	}
@@ -175,10 +562,12 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 	private static class ClosureRegularExpression<T> extends RegularExpression<T> {
 
 		private final RegularExpression<T> child;
+		private final int hash;
 		
 		public ClosureRegularExpression(RegularExpression<T> child) {
 			if (child == null) throw new RuntimeException("child is null");
 			this.child = child;
+			this.hash = child.hashCode();
 		}
 		
 		@Override
@@ -187,28 +576,47 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 		}
 		
 		@Override
-		public String toString() {
-			if (child instanceof CatRegularExpression || child instanceof UnionRegularExpression)
-				return "(" + child.toString() + ")*";
-			return child.toString() + "*";
+		public List<RegularExpression<T>> children() {
+			return Collections.singletonList(child);
 		}
 		
 		@Override
-		public boolean equals(Object other) {
-			if (other != null && other instanceof ClosureRegularExpression) {
-				ClosureRegularExpression<?> cre = (ClosureRegularExpression<?>) other;
-				return this.child.equals(cre.child);
+		RegularExpression<T> rebuild(Map<RegularExpression<?>, RegularExpression<?>> done) {
+			return rebuildShared(child, done).close();
+		}
+		
+		@Override
+		public Kind kind() {
+			return Kind.CLOSURE;
+		}
+		
+		@Override
+		public boolean hasEmptyString() {
+			return true;
+		}
+		
+		@Override
+		void pushParts(Deque<Object> stack) {
+			if (child instanceof CatRegularExpression || child instanceof UnionRegularExpression) {
+				pushParenthesized(child, "*", stack);
+			} else {
+				stack.push("*");
+				stack.push(child);
 			}
-			return false;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			return structurallyEqual(this, other);
 		}
 		
 		@Override
 		public int hashCode() {
-			return child.hashCode();
+			return hash;
 		}
 
 		@Override
-		public DecomposedRegexp<T> decompose() {
+		DecomposedRegexp<T> decomposeNode() {
 			DecomposedRegexp<T> childDecomposed = child.decompose();
 			//note we'll never check whether the child contains the empty string
 			//since it never matters in a closure
@@ -227,6 +635,8 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 	private static class CatRegularExpression<T> extends RegularExpression<T> {
 
 		private final RegularExpression<T> leftChild, rightChild;
+		private final int hash;
+		private final boolean hasEmptyString;
 		
 		public CatRegularExpression(RegularExpression<T> leftChild,
 				RegularExpression<T> rightChild) {
@@ -234,73 +644,111 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 			this.leftChild = leftChild;
 			if (rightChild == null) throw new RuntimeException("right child is null");
 			this.rightChild = rightChild;
+			this.hash = rightChild.hashCode() * 209 ^ leftChild.hashCode();
+			this.hasEmptyString = leftChild.hasEmptyString() && rightChild.hasEmptyString();
 		}
 		
+		// same as leftChild.mul(rightChild.mul(el)), but along the whole chain
 		@Override
 		public RegularExpression<T> mul(RegularExpression<T> el) {
-			return leftChild.mul(rightChild.mul(el));			
+			if (el.equals(emptyRegexp()))
+				return emptyRegexp();
+			if (el.equals(emptyString()))
+				return this;
+			final List<RegularExpression<T>> factors = factors(this);
+			RegularExpression<T> ret = el;
+			for (int i = factors.size() - 1; i >= 0; --i) {
+				ret = factors.get(i).mul(ret);
+			}
+			return ret;
 		}
-
+		
 		@Override
-		public String toString() {
-			String left;
-			if (leftChild instanceof UnionRegularExpression<?>) {
-				left = "(" + leftChild.toString() + ")";
-			} else {
-				left = leftChild.toString();
+		public List<RegularExpression<T>> children() {
+			return Collections.unmodifiableList(Arrays.asList(leftChild, rightChild));
+		}
+		
+		@Override
+		RegularExpression<T> rebuild(Map<RegularExpression<?>, RegularExpression<?>> done) {
+			final List<RegularExpression<T>> factors = factors(this);
+			RegularExpression<T> ret = emptyString();
+			for (int i = factors.size() - 1; i >= 0; --i) {
+				ret = rebuildShared(factors.get(i), done).mul(ret);
 			}
-			return left + rightChild.toString();
+			return ret;
+		}
+
+		@Override
+		public Kind kind() {
+			return Kind.CAT;
+		}
+		
+		@Override
+		public boolean hasEmptyString() {
+			return hasEmptyString;
+		}
+		
+		@Override
+		void pushParts(Deque<Object> stack) {
+			if (rightChild instanceof UnionRegularExpression)
+				pushParenthesized(rightChild, "", stack);
+			else
+				stack.push(rightChild);
+			if (leftChild instanceof UnionRegularExpression)
+				pushParenthesized(leftChild, "", stack);
+			else
+				stack.push(leftChild);
 		}
 		
 		@Override
 		public boolean equals(Object other) {
-			if (other != null && other instanceof CatRegularExpression) {
-				CatRegularExpression<?> cre = (CatRegularExpression<?>) other;
-				return this.rightChild.equals(cre.rightChild) && this.leftChild.equals(cre.leftChild);
-			}
-			return false;
+			return structurallyEqual(this, other);
 		}
 		
 		@Override
 		public int hashCode() {
-			return this.rightChild.hashCode() * 209 ^ this.leftChild.hashCode();
+			return hash;
 		}
 
+		// with tails t1 = this, t2, ..., tn for the factors c1, ..., cn,
+		// d(ti) = d(ci) ti+1, plus d(ti+1) if ci has the empty string.
+		// so only the factors up to the first that doesn't have the
+		// empty string need decomposing, and then it's worked backwards
 		@Override
-		public DecomposedRegexp<T> decompose() {
-			DecomposedRegexp<T> leftChildDecomposed = leftChild.decompose();
+		DecomposedRegexp<T> decomposeNode() {
+			final List<RegularExpression<T>> tails = new ArrayList<RegularExpression<T>>();
+			RegularExpression<T> tail = this;
+			while (tail instanceof CatRegularExpression) {
+				tails.add(tail);
+				tail = ((CatRegularExpression<T>) tail).rightChild;
+			}
+			tails.add(tail);
 			
-			Map<T, RegularExpression<T>> terms = new HashMap<T, RegularExpression<T>>();
-			for (Map.Entry<T, RegularExpression<T>> entry : leftChildDecomposed.nonemptyTerms().entrySet()) {
-				terms.put(entry.getKey(), entry.getValue().mul(rightChild));
+			final List<DecomposedRegexp<T>> decomposed = new ArrayList<DecomposedRegexp<T>>();
+			int k = 0;
+			while (true) {
+				final RegularExpression<T> factor = k < tails.size() - 1
+						? ((CatRegularExpression<T>) tails.get(k)).leftChild : tails.get(k);
+				decomposed.add(factor.decompose());
+				if (!decomposed.get(k).hasEmptyString() || k == tails.size() - 1)
+					break;
+				++k;
 			}
 			
-			boolean hasEmptyString;
-			if (leftChildDecomposed.hasEmptyString()) {
-				//we also need to include decomposition of right child
-				DecomposedRegexp<T> rightChildDecomposed = rightChild.decompose();
-				for (Map.Entry<T, RegularExpression<T>> entry : rightChildDecomposed.nonemptyTerms().entrySet()) {
-					T key = entry.getKey();
-					RegularExpression<T> curValue, newValue;
-					curValue = entry.getValue();
-					if (terms.containsKey(key)) {
-						newValue = terms.get(key).add(curValue);
-					} else {
-						newValue = curValue;
-					}
-					terms.put(key, newValue);
-				}
-				hasEmptyString = rightChildDecomposed.hasEmptyString();
-			} else {
-				hasEmptyString = false;
+			DecomposedRegexp<T> ret = k == tails.size() - 1
+					? decomposed.get(k) : followedBy(decomposed.get(k), tails.get(k + 1));
+			for (int i = k - 1; i >= 0; --i) {
+				ret = unionOf(followedBy(decomposed.get(i), tails.get(i + 1)), ret);
 			}
-			return new DecomposedRegexp<T>(terms, hasEmptyString);
+			return ret;
 		}
 	}
 
 	private static class UnionRegularExpression<T> extends RegularExpression<T> {
 
 		private final RegularExpression<T> leftChild, rightChild;
+		private final int hash;
+		private final boolean hasEmptyString;
 		
 		public UnionRegularExpression(RegularExpression<T> leftChild,
 				RegularExpression<T> rightChild) {
@@ -308,118 +756,81 @@ public abstract class RegularExpression<T> implements KleeneAlgebraElement<Regul
 			this.leftChild = leftChild;
 			if (rightChild == null) throw new RuntimeException("right child is null");
 			this.rightChild = rightChild;
+			this.hash = rightChild.hashCode() * 313 ^ leftChild.hashCode();
+			this.hasEmptyString = leftChild.hasEmptyString() || rightChild.hasEmptyString();
 		}
 		
+		// same as leftChild.add(rightChild.add(el)), but along the whole chain
 		@Override
 		public RegularExpression<T> add(RegularExpression<T> el) {
-			return leftChild.add(rightChild.add(el));			
-		}
-
-		@Override
-		public String toString() {
-			return leftChild.toString() + " + " + rightChild.toString();
-		}
-		
-		@Override
-		public boolean equals(Object other) {
-			if (other != null && other instanceof CatRegularExpression) {
-				CatRegularExpression<?> cre = (CatRegularExpression<?>) other;
-				return this.rightChild.equals(cre.rightChild) && this.leftChild.equals(cre.leftChild);
+			final List<RegularExpression<T>> summands = summands(this);
+			RegularExpression<T> ret = el;
+			for (int i = summands.size() - 1; i >= 0; --i) {
+				ret = summands.get(i).add(ret);
 			}
-			return false;
+			return ret;
 		}
 		
 		@Override
-		public int hashCode() {
-			return this.rightChild.hashCode() * 313 ^ this.leftChild.hashCode();
+		public List<RegularExpression<T>> children() {
+			return Collections.unmodifiableList(Arrays.asList(leftChild, rightChild));
 		}
-
+		
 		@Override
-		public DecomposedRegexp<T> decompose() {
-			DecomposedRegexp<T> leftChildDecomposed = leftChild.decompose();
-			DecomposedRegexp<T> rightChildDecomposed = rightChild.decompose();
-			
-			//populate initially with members from left child
-			Map<T, RegularExpression<T>> terms =
-					new HashMap<T, RegularExpression<T>>(leftChildDecomposed.nonemptyTerms());
-
-			//union in members from right child
-			for (Map.Entry<T, RegularExpression<T>> entry : rightChildDecomposed.nonemptyTerms().entrySet()) {
-				T key = entry.getKey();
-				RegularExpression<T> curValue, newValue;
-				curValue = entry.getValue();
-				if (terms.containsKey(key)) {
-					newValue = terms.get(key).add(curValue);
-				} else {
-					newValue = curValue;
+		RegularExpression<T> rebuild(Map<RegularExpression<?>, RegularExpression<?>> done) {
+			final List<RegularExpression<T>> summands = summands(this);
+			// a + a = a over the whole chain, which add() only checks
+			// near the front of it
+			final Set<RegularExpression<T>> seen = new HashSet<RegularExpression<T>>();
+			RegularExpression<T> ret = emptyRegexp();
+			for (int i = summands.size() - 1; i >= 0; --i) {
+				final RegularExpression<T> summand = rebuildShared(summands.get(i), done);
+				if (!seen.add(summand)) {
+					RegexpSimplifier.applied(RegexpSimplifier.Rule.IDEMPOTENCE);
+					continue;
 				}
-				terms.put(key, newValue);
+				ret = summand.add(ret);
 			}
-			
-			boolean hasEmptyString =
-					leftChildDecomposed.hasEmptyString() || rightChildDecomposed.hasEmptyString();
-			return new DecomposedRegexp<T>(terms, hasEmptyString);
+			return ret;
 		}
-	}
-	
-	//kind of a hack, at least for now, would probably have to be improved to be solid
-	private static class RegularExpressionReversal<T> extends RegularExpression<T> {
 
-		private final RegularExpression<T> childRegexp;
-		
-		public RegularExpressionReversal(RegularExpression<T> childRegexp) {
-			this.childRegexp = childRegexp;
-		}
-		
 		@Override
-		public RegularExpression<T> add(RegularExpression<T> re) {
-			if (re == null || !(re instanceof RegularExpressionReversal)) {
-				throw new RuntimeException("reversals can only interoperate with other reversals");
-			}
-			return new RegularExpressionReversal<T>(this.childRegexp.add(((RegularExpressionReversal<T>)re).childRegexp));
+		public Kind kind() {
+			return Kind.UNION;
 		}
 		
 		@Override
-		public RegularExpression<T> mul(RegularExpression<T> re) {
-			if (re == null || !(re instanceof RegularExpressionReversal)) {
-				throw new RuntimeException("reversals can only interoperate with other reversals");
-			}
-			return new RegularExpressionReversal<T>(((RegularExpressionReversal<T>)re).childRegexp.mul(this.childRegexp));
+		public boolean hasEmptyString() {
+			return hasEmptyString;
 		}
 		
 		@Override
-		public RegularExpression<T> close() {
-			return new RegularExpressionReversal<T>(childRegexp.close());
+		void pushParts(Deque<Object> stack) {
+			stack.push(rightChild);
+			stack.push(" + ");
+			stack.push(leftChild);
 		}
 		
 		@Override
-		public String toString() {
-			return childRegexp.toString();
+		public boolean equals(Object other) {
+			return structurallyEqual(this, other);
 		}
 		
 		@Override
 		public int hashCode() {
-			return childRegexp.hashCode();
-		}
-		
-		@Override
-		public boolean equals(Object other) {
-			if (other == null || !(other instanceof RegularExpressionReversal))
-				return false;
-			RegularExpressionReversal<?> rer = (RegularExpressionReversal<?>) other;
-			return this.childRegexp.equals(rer.childRegexp);
+			return hash;
 		}
 
+		// the decompositions of the summands, merged from the last one back
 		@Override
-		public DecomposedRegexp<T> decompose() {
-			// "reversal" is kind of a hack anyways, I don't think we need this operation
-			// here so for now don't implement
-			throw new RuntimeException("not implemented");
+		DecomposedRegexp<T> decomposeNode() {
+			final List<RegularExpression<T>> summands = summands(this);
+			DecomposedRegexp<T> ret = summands.get(summands.size() - 1).decompose();
+			for (int i = summands.size() - 2; i >= 0; --i) {
+				ret = unionOf(summands.get(i).decompose(), ret);
+			}
+			return ret;
 		}
 	}
-	
-	public static <T> RegularExpression<T> reversal(RegularExpression<T> re) {
-		return new RegularExpressionReversal<T>(re);
-	}
 
 }
@@ -0,0 +1,60 @@
+package algebraparsing.KleeneAlgebra;
+
+// the min-plus semiring over the nonnegative reals with infinity,
+// solving a grammar over it gives the cost of the cheapest derivation
+// of each nonterminal
+public final class TropicalSemiringElement implements KleeneAlgebraElement<TropicalSemiringElement> {
+
+	private static final TropicalSemiringElement ZERO = new TropicalSemiringElement(Double.POSITIVE_INFINITY);
+	private static final TropicalSemiringElement ONE = new TropicalSemiringElement(0.0);
+
+	private final double value;
+
+	private TropicalSemiringElement(double value) {
+		this.value = value;
+	}
+
+	// weights must be nonnegative, otherwise closure isn't defined
+	public static TropicalSemiringElement of(double value) {
+		if (Double.isNaN(value) || value < 0.0)
+			throw new IllegalArgumentException("weight must be nonnegative, but is " + value);
+		return new TropicalSemiringElement(value);
+	}
+
+	public static TropicalSemiringElement zero() { return ZERO; }
+	public static TropicalSemiringElement one() { return ONE; }
+
+	public double getValue() { return value; }
+
+	@Override
+	public TropicalSemiringElement add(TropicalSemiringElement el) {
+		return this.value <= el.value ? this : el;
+	}
+
+	@Override
+	public TropicalSemiringElement mul(TropicalSemiringElement el) {
+		return new TropicalSemiringElement(this.value + el.value);
+	}
+
+	@Override
+	public TropicalSemiringElement close() {
+		// going around a cycle never makes anything cheaper
+		return ONE;
+	}
+
+	@Override
+	public String toString() {
+		return Double.toString(value);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof TropicalSemiringElement
+				&& Double.compare(((TropicalSemiringElement) other).value, this.value) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return Double.hashCode(value);
+	}
+}
@@ -1,15 +1,17 @@
 package algebraparsing;
 
-import java.util.Map;
+import java.util.*;
+import java.util.function.Function;
 
 import algebraparsing.KleeneAlgebra.KleeneMatrix;
+import algebraparsing.KleeneAlgebra.LazyKleeneClosure;
 import algebraparsing.KleeneAlgebra.RegularExpression;
 
 public class MatrixVectorGrammar<T> {
 	public final Map<Nonterminal, Integer> nonterminalIndexMap;
 	public final KleeneMatrix<RegularExpression<TerminalOrNonterminal<T>>> matrix;
 	public final KleeneMatrix<RegularExpression<TerminalOrNonterminal<T>>> vector;
-	
+
 	public MatrixVectorGrammar(
 		Map<Nonterminal, Integer> nonterminalIndexMap,
 		KleeneMatrix<RegularExpression<TerminalOrNonterminal<T>>> matrix,
@@ -19,4 +21,60 @@ public class MatrixVectorGrammar<T> {
 		this.matrix = matrix;
 		this.vector = vector;
 	}
+
+	// solves the system for the expansion of every nonterminal,
+	// the rows of the matrix multiply the nonterminals from the right, so
+	// we solve for the reversed expansions, where they multiply from the
+	// left, and then reverse the solution
+	public Map<Nonterminal, RegularExpression<TerminalOrNonterminal<T>>> solve() {
+		final Function<RegularExpression<TerminalOrNonterminal<T>>, RegularExpression<TerminalOrNonterminal<T>>> reversal =
+				reversal();
+
+		final KleeneMatrix<RegularExpression<TerminalOrNonterminal<T>>> solution =
+				matrix.projectionThroughMorphism(reversal).solve(vector.projectionThroughMorphism(reversal));
+
+		final Map<Nonterminal, RegularExpression<TerminalOrNonterminal<T>>> nonterminalExpansions =
+				new HashMap<Nonterminal, RegularExpression<TerminalOrNonterminal<T>>>();
+		for (Map.Entry<Nonterminal, Integer> entry : nonterminalIndexMap.entrySet()) {
+			nonterminalExpansions.put(entry.getKey(), reversal.apply(solution.getAt(entry.getValue(), 0)));
+		}
+		return nonterminalExpansions;
+	}
+
+	// like solve(), but only for the given entry points (typically just the
+	// start symbol), only rows of the closure that are reachable from the
+	// entry points get computed
+	public Map<Nonterminal, RegularExpression<TerminalOrNonterminal<T>>> solveFor(Collection<Nonterminal> entryPoints) {
+		final Function<RegularExpression<TerminalOrNonterminal<T>>, RegularExpression<TerminalOrNonterminal<T>>> reversal =
+				reversal();
+
+		final LazyKleeneClosure<RegularExpression<TerminalOrNonterminal<T>>> closure =
+				matrix.projectionThroughMorphism(reversal).lazyClose();
+		final KleeneMatrix<RegularExpression<TerminalOrNonterminal<T>>> reversedVector =
+				vector.projectionThroughMorphism(reversal);
+
+		final Map<Nonterminal, RegularExpression<TerminalOrNonterminal<T>>> nonterminalExpansions =
+				new HashMap<Nonterminal, RegularExpression<TerminalOrNonterminal<T>>>();
+		for (Nonterminal entryPoint : entryPoints) {
+			if (!nonterminalIndexMap.containsKey(entryPoint))
+				throw new IllegalArgumentException(entryPoint + " is not a nonterminal of this grammar");
+			final List<RegularExpression<TerminalOrNonterminal<T>>> row =
+					closure.getRow(nonterminalIndexMap.get(entryPoint));
+			RegularExpression<TerminalOrNonterminal<T>> acc = RegularExpression.emptyRegexp();
+			for (int k = 0; k < row.size(); ++k) {
+				acc = acc.add(row.get(k).mul(reversedVector.getAt(k, 0)));
+			}
+			nonterminalExpansions.put(entryPoint, reversal.apply(acc));
+		}
+		return nonterminalExpansions;
+	}
+
+	private static <T> Function<RegularExpression<TerminalOrNonterminal<T>>, RegularExpression<TerminalOrNonterminal<T>>> reversal() {
+		return new Function<RegularExpression<TerminalOrNonterminal<T>>, RegularExpression<TerminalOrNonterminal<T>>>() {
+			@Override
+			public RegularExpression<TerminalOrNonterminal<T>> apply(RegularExpression<TerminalOrNonterminal<T>> t) {
+				return t.reverse();
+			}
+		};
+	}
 }
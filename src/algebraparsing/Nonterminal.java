@@ -1,25 +1,30 @@
 package algebraparsing;
 
 public class Nonterminal {
-	private final char c;
+	private final String name;
 	public Nonterminal(char c) {
-		this.c = c;
+		this.name = Character.toString(c);
+	}
+	public Nonterminal(String name) {
+		if (name == null || name.isEmpty())
+			throw new IllegalArgumentException("name must not be null or empty");
+		this.name = name;
 	}
 	@Override
 	public String toString() {
-		return Character.toString(c);
+		return name;
 	}
 	
 	@Override
 	public boolean equals(Object other) {
 		if (other == null) return false;
 		if (!(other instanceof Nonterminal)) return false;
-		return this.c == ((Nonterminal )other).c;
+		return this.name.equals(((Nonterminal )other).name);
 	}
 	
 	@Override
 	public int hashCode() {
-		return Character.hashCode(c);
+		return name.hashCode();
 	}
 
 }
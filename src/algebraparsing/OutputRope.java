@@ -0,0 +1,138 @@
+package algebraparsing;
+
+import java.util.*;
+
+// an immutable sequence of output terminals made by appending lists of
+// them, such as the outputs of translations, without copying any: a rope is
+// either one list or the concatenation of two ropes, so appending is O(1)
+// and ropes share whatever they were built from. the terminals are only
+// gathered up when the rope is written to an OutputSink or turned into a
+// list. ropes can be built to any depth, nothing walking them recurses.
+//
+// the lists must not change once they're in a rope.
+public final class OutputRope implements Iterable<Terminal> {
+
+	private static final OutputRope EMPTY = new OutputRope(Collections.<Terminal>emptyList());
+
+	// a leaf has a list, a concatenation a left and right
+	private final List<Terminal> terminals;
+	private final OutputRope left;
+	private final OutputRope right;
+	private final long size;
+
+	private OutputRope(List<Terminal> terminals) {
+		this.terminals = terminals;
+		this.left = null;
+		this.right = null;
+		this.size = terminals.size();
+	}
+
+	private OutputRope(OutputRope left, OutputRope right) {
+		this.terminals = null;
+		this.left = left;
+		this.right = right;
+		this.size = left.size + right.size;
+	}
+
+	public static OutputRope empty() {
+		return EMPTY;
+	}
+
+	public static OutputRope of(List<Terminal> terminals) {
+		if (terminals.isEmpty())
+			return EMPTY;
+		return new OutputRope(terminals);
+	}
+
+	public OutputRope append(List<Terminal> terminals) {
+		return concat(of(terminals));
+	}
+
+	public OutputRope concat(OutputRope other) {
+		if (other.size == 0)
+			return this;
+		if (size == 0)
+			return other;
+		return new OutputRope(this, other);
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void writeTo(OutputSink sink) {
+		final Iterator<List<Terminal>> leaves = leaves();
+		while (leaves.hasNext()) {
+			sink.emit(leaves.next());
+		}
+	}
+
+	public List<Terminal> toList() {
+		if (size > Integer.MAX_VALUE - 8)
+			throw new IllegalStateException(size + " terminals don't fit in a list");
+		final List<Terminal> ret = new ArrayList<Terminal>((int) size);
+		final Iterator<List<Terminal>> leaves = leaves();
+		while (leaves.hasNext()) {
+			ret.addAll(leaves.next());
+		}
+		return ret;
+	}
+
+	@Override
+	public Iterator<Terminal> iterator() {
+		final Iterator<List<Terminal>> leaves = leaves();
+		return new Iterator<Terminal>() {
+			private Iterator<Terminal> current = Collections.<Terminal>emptyList().iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!current.hasNext() && leaves.hasNext()) {
+					current = leaves.next().iterator();
+				}
+				return current.hasNext();
+			}
+
+			@Override
+			public Terminal next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return current.next();
+			}
+		};
+	}
+
+	// the lists of the rope in order, going down the left of each
+	// concatenation with its right waiting on a stack
+	private Iterator<List<Terminal>> leaves() {
+		final Deque<OutputRope> pending = new ArrayDeque<OutputRope>();
+		if (size > 0)
+			pending.push(this);
+		return new Iterator<List<Terminal>>() {
+			@Override
+			public boolean hasNext() {
+				return !pending.isEmpty();
+			}
+
+			@Override
+			public List<Terminal> next() {
+				if (pending.isEmpty())
+					throw new NoSuchElementException();
+				OutputRope rope = pending.pop();
+				while (rope.terminals == null) {
+					pending.push(rope.right);
+					rope = rope.left;
+				}
+				return rope.terminals;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return toList().toString();
+	}
+}
@@ -0,0 +1,17 @@
+package algebraparsing;
+
+import java.util.List;
+
+// where a translation puts its output terminals as they're emitted, see
+// SdtsTransducer, PikeVm and ByteBufferOutputSink.
+// a sink may buffer what it's given until flush().
+public interface OutputSink {
+
+	void emit(Terminal terminal);
+
+	// emits the terminals in order, without the list being copied
+	void emit(List<Terminal> terminals);
+
+	// passes on anything buffered
+	void flush();
+}
@@ -0,0 +1,257 @@
+package algebraparsing;
+
+import java.nio.IntBuffer;
+import java.util.*;
+
+import algebraparsing.TranslationAutomaton.Action;
+import algebraparsing.TranslationAutomaton.State;
+
+// the states of a TranslationAutomaton, fully enumerated and flattened
+// into int tables so that a TableParser can run them without touching
+// any regular expressions.
+//
+// input terminals and output terminals are numbered separately, column
+// terminalCount() of the action table is for the end of the input.
+// each action is packed into an int as (target state << 3) | kind, and
+// comes with an operand: the return state for a push, and for a shift or
+// emit the index of the list of output terminals to emit.
+// the tables are kept in IntBuffers, which either wrap arrays on the heap
+// or are views of a mapped file (see ParseTableFile), reads only ever use
+// absolute gets so instances can be shared between threads either way.
+public class ParseTable {
+
+	public static final int ERROR = 0;
+	public static final int SHIFT = 1;
+	public static final int EMIT = 2;
+	public static final int PUSH = 3;
+	public static final int POP = 4;
+
+	private static final int KIND_BITS = 3;
+	private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+
+	private final List<Terminal> terminals;
+	private final Map<Terminal, Integer> terminalIds;
+	private final List<Terminal> outputSymbols;
+
+	private final int stateCount;
+	private final int columnCount;
+	private final IntBuffer actions;
+	private final IntBuffer operands;
+	private final IntBuffer outputOffsets;
+	private final IntBuffer outputs;
+
+	ParseTable(List<Terminal> terminals, List<Terminal> outputSymbols, int stateCount,
+			IntBuffer actions, IntBuffer operands, IntBuffer outputOffsets, IntBuffer outputs) {
+		this.terminals = Collections.unmodifiableList(new ArrayList<Terminal>(terminals));
+		this.terminalIds = new HashMap<Terminal, Integer>();
+		for (int i = 0; i < terminals.size(); ++i) {
+			this.terminalIds.put(terminals.get(i), i);
+		}
+		this.outputSymbols = Collections.unmodifiableList(new ArrayList<Terminal>(outputSymbols));
+		this.stateCount = stateCount;
+		this.columnCount = terminals.size() + 1;
+		if (actions.limit() != stateCount * columnCount || operands.limit() != actions.limit())
+			throw new IllegalArgumentException("action tables have the wrong size");
+		if (outputOffsets.limit() == 0)
+			throw new IllegalArgumentException("output offsets must not be empty");
+		this.actions = actions;
+		this.operands = operands;
+		this.outputOffsets = outputOffsets;
+		this.outputs = outputs;
+	}
+
+	// enumerates every state that's reachable from the initial state
+	public static ParseTable generate(TranslationAutomaton automaton) {
+		final List<Terminal> terminals = new ArrayList<Terminal>();
+		final Set<Terminal> terminalSet = new HashSet<Terminal>();
+		final List<State> states = new ArrayList<State>();
+		final Map<State, Integer> stateIds = new HashMap<State, Integer>();
+		final List<Map<Terminal, Action>> rows = new ArrayList<Map<Terminal, Action>>();
+
+		stateIds.put(automaton.initialState(), 0);
+		states.add(automaton.initialState());
+
+		// the alphabet is only known once every state has been seen, so keep
+		// going until a pass neither finds a new state nor a new terminal
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 0; i < states.size(); ++i) {
+				final State state = states.get(i);
+				for (Terminal terminal : state.expectedTerminals()) {
+					if (terminalSet.add(terminal)) {
+						terminals.add(terminal);
+						changed = true;
+					}
+				}
+				if (rows.size() == i)
+					rows.add(new HashMap<Terminal, Action>());
+				final Map<Terminal, Action> row = rows.get(i);
+				final List<Terminal> columns = new ArrayList<Terminal>(terminals);
+				columns.add(null);
+				for (Terminal terminal : columns) {
+					if (row.containsKey(terminal))
+						continue;
+					final Action action = state.actionOn(terminal);
+					row.put(terminal, action);
+					if (action == null)
+						continue;
+					for (State reached : Arrays.asList(action.target, action.returnState)) {
+						if (reached != null && !stateIds.containsKey(reached)) {
+							stateIds.put(reached, states.size());
+							states.add(reached);
+							changed = true;
+						}
+					}
+				}
+			}
+		}
+
+		final List<Terminal> outputSymbols = new ArrayList<Terminal>();
+		final Map<Terminal, Integer> outputSymbolIds = new HashMap<Terminal, Integer>();
+		final Map<List<Terminal>, Integer> outputListIds = new HashMap<List<Terminal>, Integer>();
+		final List<Integer> outputOffsets = new ArrayList<Integer>();
+		final List<Integer> outputs = new ArrayList<Integer>();
+		// output list 0 is the empty one
+		outputListIds.put(Collections.<Terminal>emptyList(), 0);
+		outputOffsets.add(0);
+		outputOffsets.add(0);
+
+		final int columnCount = terminals.size() + 1;
+		final int[] actions = new int[states.size() * columnCount];
+		final int[] operands = new int[states.size() * columnCount];
+		for (int i = 0; i < states.size(); ++i) {
+			for (int column = 0; column < columnCount; ++column) {
+				final Action action = rows.get(i).get(column < terminals.size() ? terminals.get(column) : null);
+				if (action == null)
+					continue;
+				final int index = i * columnCount + column;
+				switch (action.kind) {
+				case SHIFT:
+				case EMIT:
+					Integer listId = outputListIds.get(action.outputs);
+					if (listId == null) {
+						listId = outputOffsets.size() - 1;
+						outputListIds.put(action.outputs, listId);
+						for (Terminal out : action.outputs) {
+							if (!outputSymbolIds.containsKey(out)) {
+								outputSymbolIds.put(out, outputSymbols.size());
+								outputSymbols.add(out);
+							}
+							outputs.add(outputSymbolIds.get(out));
+						}
+						outputOffsets.add(outputs.size());
+					}
+					actions[index] = stateIds.get(action.target) << KIND_BITS
+							| (action.kind == TranslationAutomaton.ActionKind.SHIFT ? SHIFT : EMIT);
+					operands[index] = listId;
+					break;
+				case PUSH:
+					actions[index] = stateIds.get(action.target) << KIND_BITS | PUSH;
+					operands[index] = stateIds.get(action.returnState);
+					break;
+				case POP:
+					actions[index] = POP;
+					break;
+				}
+			}
+		}
+
+		return new ParseTable(terminals, outputSymbols, states.size(),
+				IntBuffer.wrap(actions), IntBuffer.wrap(operands),
+				IntBuffer.wrap(toArray(outputOffsets)), IntBuffer.wrap(toArray(outputs)));
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		final int[] ret = new int[list.size()];
+		for (int i = 0; i < ret.length; ++i) {
+			ret[i] = list.get(i);
+		}
+		return ret;
+	}
+
+	public int stateCount() { return stateCount; }
+	public int terminalCount() { return columnCount - 1; }
+	public int endColumn() { return columnCount - 1; }
+
+	// -1 if the terminal never occurs in the input of the translation
+	public int terminalId(Terminal terminal) {
+		final Integer id = terminalIds.get(terminal);
+		return id == null ? -1 : id;
+	}
+
+	public Terminal terminal(int id) {
+		return terminals.get(id);
+	}
+
+	public Terminal outputSymbol(int id) {
+		return outputSymbols.get(id);
+	}
+
+	public int outputSymbolCount() {
+		return outputSymbols.size();
+	}
+
+	public int outputListCount() {
+		return outputOffsets.limit() - 1;
+	}
+
+	public int outputCount() {
+		return outputs.limit();
+	}
+
+	public int action(int state, int column) {
+		return actions.get(state * columnCount + column);
+	}
+
+	public int operand(int state, int column) {
+		return operands.get(state * columnCount + column);
+	}
+
+	public static int kind(int action) {
+		return action & KIND_MASK;
+	}
+
+	public static int target(int action) {
+		return action >>> KIND_BITS;
+	}
+
+	public int outputsStart(int outputList) {
+		return outputOffsets.get(outputList);
+	}
+
+	public int outputsEnd(int outputList) {
+		return outputOffsets.get(outputList + 1);
+	}
+
+	public int output(int index) {
+		return outputs.get(index);
+	}
+
+	// size of the tables in ints, a rough measure of memory use
+	public int tableSize() {
+		return actions.limit() + operands.limit() + outputOffsets.limit() + outputs.limit();
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (int state = 0; state < stateCount; ++state) {
+			sb.append(state + ":");
+			for (int column = 0; column < columnCount; ++column) {
+				final int action = action(state, column);
+				if (kind(action) == ERROR)
+					continue;
+				sb.append(" " + (column == endColumn() ? "[end]" : terminal(column).toString()) + "=");
+				switch (kind(action)) {
+				case SHIFT: sb.append("shift " + target(action)); break;
+				case EMIT: sb.append("emit " + target(action)); break;
+				case PUSH: sb.append("push " + operand(state, column) + " goto " + target(action)); break;
+				case POP: sb.append("pop"); break;
+				}
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,161 @@
+package algebraparsing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// reads and writes compiled ParseTables, so that a grammar only has to be
+// compiled once rather than in every jvm that uses it.
+//
+// the layout is a header of big-endian ints:
+//   magic, version, state count, terminal count, output symbol count,
+//   output list count, output count
+// followed by the action table, the operand table, the output offsets and
+// the outputs, all as big-endian ints, and lastly the input terminals and
+// then the output symbols, each as a byte length and that many bytes of utf-8.
+//
+// map() doesn't copy the tables, the ParseTable reads them straight out of
+// the mapped file; only the terminals are decoded, since looking up terminal
+// ids needs them as objects anyway.
+// files are trusted to have been written by write(), beyond the header and
+// the sizes nothing is checked.
+public class ParseTableFile {
+
+	public static final int MAGIC = 0x41505442; // "APTB"
+	public static final int VERSION = 1;
+
+	private static final int HEADER_INTS = 7;
+
+	// can't instantiate
+	private ParseTableFile() {}
+
+	public static void write(ParseTable table, Path path) throws IOException {
+		final List<byte[]> strings = new ArrayList<byte[]>();
+		for (int i = 0; i < table.terminalCount(); ++i) {
+			strings.add(table.terminal(i).getText().getBytes(StandardCharsets.UTF_8));
+		}
+		for (int i = 0; i < table.outputSymbolCount(); ++i) {
+			strings.add(table.outputSymbol(i).getText().getBytes(StandardCharsets.UTF_8));
+		}
+
+		final int cells = table.stateCount() * (table.terminalCount() + 1);
+		long size = 4L * (HEADER_INTS + 2L * cells + table.outputListCount() + 1 + table.outputCount());
+		for (byte[] s : strings) {
+			size += 4 + s.length;
+		}
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("parse table too large to write (" + size + " bytes)");
+
+		final ByteBuffer buf = ByteBuffer.allocate((int)size).order(ByteOrder.BIG_ENDIAN);
+		buf.putInt(MAGIC);
+		buf.putInt(VERSION);
+		buf.putInt(table.stateCount());
+		buf.putInt(table.terminalCount());
+		buf.putInt(table.outputSymbolCount());
+		buf.putInt(table.outputListCount());
+		buf.putInt(table.outputCount());
+		for (int state = 0; state < table.stateCount(); ++state) {
+			for (int column = 0; column <= table.terminalCount(); ++column) {
+				buf.putInt(table.action(state, column));
+			}
+		}
+		for (int state = 0; state < table.stateCount(); ++state) {
+			for (int column = 0; column <= table.terminalCount(); ++column) {
+				buf.putInt(table.operand(state, column));
+			}
+		}
+		for (int i = 0; i < table.outputListCount(); ++i) {
+			buf.putInt(table.outputsStart(i));
+		}
+		buf.putInt(table.outputListCount() == 0 ? 0 : table.outputsEnd(table.outputListCount() - 1));
+		for (int i = 0; i < table.outputCount(); ++i) {
+			buf.putInt(table.output(i));
+		}
+		for (byte[] s : strings) {
+			buf.putInt(s.length);
+			buf.put(s);
+		}
+		buf.flip();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+		}
+	}
+
+	public static ParseTable map(Path path) throws IOException {
+		final MappedByteBuffer file;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException(path + " is too large to be a parse table");
+			// the mapping stays valid after the channel is closed
+			file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		file.order(ByteOrder.BIG_ENDIAN);
+
+		if (file.limit() < 4 * HEADER_INTS || file.getInt(0) != MAGIC)
+			throw new IOException(path + " is not a parse table file");
+		final int version = file.getInt(4);
+		if (version != VERSION)
+			throw new IOException(path + " has parse table format version " + version
+					+ ", only version " + VERSION + " is supported");
+		final int stateCount = file.getInt(8);
+		final int terminalCount = file.getInt(12);
+		final int outputSymbolCount = file.getInt(16);
+		final int outputListCount = file.getInt(20);
+		final int outputCount = file.getInt(24);
+		if (stateCount < 0 || terminalCount < 0 || outputSymbolCount < 0 || outputListCount < 0 || outputCount < 0)
+			throw new IOException(path + " has a corrupt header");
+
+		final long cells = (long)stateCount * (terminalCount + 1);
+		final long tablesEnd = 4L * (HEADER_INTS + 2 * cells + outputListCount + 1 + outputCount);
+		if (tablesEnd > file.limit())
+			throw new IOException(path + " is truncated");
+
+		int offset = 4 * HEADER_INTS;
+		final IntBuffer actions = ints(file, offset, (int)cells);
+		offset += 4 * (int)cells;
+		final IntBuffer operands = ints(file, offset, (int)cells);
+		offset += 4 * (int)cells;
+		final IntBuffer outputOffsets = ints(file, offset, outputListCount + 1);
+		offset += 4 * (outputListCount + 1);
+		final IntBuffer outputs = ints(file, offset, outputCount);
+		offset += 4 * outputCount;
+
+		final List<Terminal> terminals = new ArrayList<Terminal>();
+		final List<Terminal> outputSymbols = new ArrayList<Terminal>();
+		for (int i = 0; i < terminalCount + outputSymbolCount; ++i) {
+			if (offset + 4 > file.limit())
+				throw new IOException(path + " is truncated");
+			final int length = file.getInt(offset);
+			offset += 4;
+			if (length < 0 || offset + length > file.limit())
+				throw new IOException(path + " is truncated");
+			final byte[] bytes = new byte[length];
+			final ByteBuffer view = file.duplicate();
+			view.position(offset);
+			view.get(bytes);
+			offset += length;
+			(i < terminalCount ? terminals : outputSymbols).add(new Terminal(new String(bytes, StandardCharsets.UTF_8)));
+		}
+
+		return new ParseTable(terminals, outputSymbols, stateCount, actions, operands, outputOffsets, outputs);
+	}
+
+	private static IntBuffer ints(ByteBuffer file, int offset, int count) {
+		final ByteBuffer view = file.duplicate();
+		view.position(offset);
+		view.limit(offset + 4 * count);
+		return view.slice().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+	}
+}
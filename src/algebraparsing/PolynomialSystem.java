@@ -0,0 +1,146 @@
+package algebraparsing;
+
+import java.util.*;
+
+import algebraparsing.KleeneAlgebra.KleeneAlgebraElement;
+import algebraparsing.KleeneAlgebra.KleeneMatrix;
+import algebraparsing.KleeneAlgebra.KleeneVector;
+
+// a system of equations X = f(X), where X is a vector of variables (one per
+// nonterminal) and each component of f is a polynomial over the Kleene
+// algebra K, i.e. a sum of monomials c0 X_a c1 X_b c2 ...
+//
+// the least solution is found with Newton's method as described by Esparza,
+// Kiefer and Luttenberger ("Newtonian program analysis"): each step solves a
+// linear system whose matrix is the jacobian of f, and that linear system is
+// handed to KleeneMatrix.solve().  building the jacobian as a matrix only
+// makes sense if multiplication in K is commutative, so this is meant for the
+// boolean, tropical and counting semirings and not for regular expressions.
+public class PolynomialSystem<K extends KleeneAlgebraElement<K>> {
+
+	// a product c0 X_v0 c1 X_v1 ... cr, there is always one more
+	// constant than there are variables
+	static class Monomial<K> {
+		private final List<K> constants;
+		private final int[] variables;
+
+		Monomial(List<K> constants, List<Integer> variables) {
+			if (constants.size() != variables.size() + 1)
+				throw new IllegalArgumentException("need exactly one more constant than variables");
+			this.constants = new ArrayList<K>(constants);
+			this.variables = new int[variables.size()];
+			for (int i = 0; i < this.variables.length; ++i) {
+				this.variables[i] = variables.get(i);
+			}
+		}
+	}
+
+	public final Map<Nonterminal, Integer> nonterminalIndexMap;
+	private final List<List<Monomial<K>>> polynomials;
+	private final K zero;
+	private final K one;
+
+	PolynomialSystem(Map<Nonterminal, Integer> nonterminalIndexMap,
+			List<List<Monomial<K>>> polynomials, K zero, K one) {
+		if (zero == null)
+			throw new IllegalArgumentException("zero is null");
+		if (one == null)
+			throw new IllegalArgumentException("one is null");
+		this.nonterminalIndexMap = nonterminalIndexMap;
+		this.polynomials = polynomials;
+		this.zero = zero;
+		this.one = one;
+	}
+
+	public int size() {
+		return polynomials.size();
+	}
+
+	// f(nu)
+	public KleeneVector<K> evaluate(KleeneVector<K> nu) {
+		final KleeneVector<K> ret = new KleeneVector<K>(size(), zero);
+		for (int i = 0; i < size(); ++i) {
+			for (Monomial<K> monomial : polynomials.get(i)) {
+				K product = monomial.constants.get(0);
+				for (int p = 0; p < monomial.variables.length; ++p) {
+					product = product.mul(nu.get(monomial.variables[p])).mul(monomial.constants.get(p + 1));
+				}
+				ret.accumulate(i, product);
+			}
+		}
+		return ret;
+	}
+
+	// the matrix of partial derivatives of f at nu, entry (i, j) is the sum,
+	// over every occurrence of X_j in f_i, of the monomial with that
+	// occurrence removed and every other variable evaluated at nu
+	public KleeneMatrix<K> jacobian(KleeneVector<K> nu) {
+		final int n = size();
+		final List<List<K>> dat = new ArrayList<List<K>>(n);
+		for (int i = 0; i < n; ++i) {
+			final List<K> row = new ArrayList<K>(Collections.nCopies(n, zero));
+			for (Monomial<K> monomial : polynomials.get(i)) {
+				for (int p = 0; p < monomial.variables.length; ++p) {
+					K product = monomial.constants.get(0);
+					for (int q = 0; q < monomial.variables.length; ++q) {
+						if (q != p)
+							product = product.mul(nu.get(monomial.variables[q]));
+						product = product.mul(monomial.constants.get(q + 1));
+					}
+					final int j = monomial.variables[p];
+					row.set(j, row.get(j).add(product));
+				}
+			}
+			dat.add(row);
+		}
+		return new KleeneMatrix<K>(dat, zero, one);
+	}
+
+	// the part of f(nu + delta) made of terms that take at least two
+	// factors from delta, which is exactly what's left over after a newton
+	// step: f(nu + delta) = f(nu) + Df(nu)(delta) + remainder
+	private KleeneVector<K> remainder(KleeneVector<K> nu, KleeneVector<K> delta) {
+		final KleeneVector<K> ret = new KleeneVector<K>(size(), zero);
+		for (int i = 0; i < size(); ++i) {
+			for (Monomial<K> monomial : polynomials.get(i)) {
+				// products that took no factor, exactly one factor,
+				// and two or more factors from delta so far
+				K none = monomial.constants.get(0);
+				K single = zero;
+				K several = zero;
+				for (int p = 0; p < monomial.variables.length; ++p) {
+					final K c = monomial.constants.get(p + 1);
+					final K x = nu.get(monomial.variables[p]);
+					final K d = delta.get(monomial.variables[p]);
+					several = several.mul(x.add(d)).add(single.mul(d)).mul(c);
+					single = single.mul(x).add(none.mul(d)).mul(c);
+					none = none.mul(x).mul(c);
+				}
+				ret.accumulate(i, several);
+			}
+		}
+		return ret;
+	}
+
+	// newton iteration starting from zero:
+	//   nu(0) = 0, delta(0) = f(0)
+	//   nu(i+1) = nu(i) + Df(nu(i))* delta(i)
+	// stops as soon as a step adds nothing, at which point nu is the least
+	// fixed point, or after maxIterations steps.  for idempotent semirings
+	// at most one step per variable is ever needed.
+	public FreeKleeneModuleElement<Nonterminal, K> newtonSolve(int maxIterations) {
+		final KleeneVector<K> nu = new KleeneVector<K>(size(), zero);
+		KleeneVector<K> delta = evaluate(nu);
+
+		for (int iteration = 0; iteration < maxIterations; ++iteration) {
+			final KleeneVector<K> increment = jacobian(nu).solve(delta);
+			final KleeneVector<K> previous = nu.copy();
+			nu.addInPlace(increment);
+			if (nu.equals(previous))
+				break;
+			delta = remainder(previous, increment);
+		}
+
+		return FreeKleeneModuleElement.fromDense(nonterminalIndexMap, nu);
+	}
+}
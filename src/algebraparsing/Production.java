@@ -30,4 +30,17 @@ public class Production<T> {
 		}
 		return nonterminal.toString() + " -> " + sb.toString();
 	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if (other == null) return false;
+		if (!(other instanceof Production)) return false;
+		Production<?> p = (Production<?>) other;
+		return this.nonterminal.equals(p.nonterminal) && this.rhs.equals(p.rhs);
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * nonterminal.hashCode() + rhs.hashCode();
+	}
 }
@@ -0,0 +1,156 @@
+package algebraparsing;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import algebraparsing.TranslationAutomaton.Action;
+import algebraparsing.TranslationAutomaton.State;
+
+// runs a syntax directed translation on a stream of input terminals,
+// emitting output terminals as soon as they're determined.
+// nothing about the input is kept other than the stack of expansions that
+// are still open, so memory use depends on how deeply the input nests
+// and not on how long it is.
+//
+// output goes to an OutputSink, which is given the output list of each
+// action as a whole, so nothing is copied on the way out.
+public class SdtsTransducer {
+
+	private final TranslationAutomaton automaton;
+
+	public SdtsTransducer(TranslationAutomaton automaton) {
+		if (automaton == null)
+			throw new IllegalArgumentException("automaton must not be null");
+		this.automaton = automaton;
+	}
+
+	public static SdtsTransducer fromGrammar(Grammar<InputOrOutputTerminal, Translation> grammar) {
+		return new SdtsTransducer(TranslationAutomaton.fromGrammar(grammar));
+	}
+
+	// a single translation in progress, not safe to share between threads
+	// (but different runs of the same transducer can proceed concurrently)
+	public Run start(OutputSink output) {
+		return new Run(output);
+	}
+
+	public Run start(final Consumer<Terminal> output) {
+		if (output == null)
+			throw new IllegalArgumentException("output must not be null");
+		return new Run(new OutputSink() {
+			@Override
+			public void emit(Terminal terminal) {
+				output.accept(terminal);
+			}
+
+			@Override
+			public void emit(List<Terminal> terminals) {
+				for (Terminal terminal : terminals) {
+					output.accept(terminal);
+				}
+			}
+
+			@Override
+			public void flush() {
+			}
+		});
+	}
+
+	// translates a whole input in one go
+	public List<Terminal> translate(Iterable<Terminal> input) {
+		final List<Terminal> ret = new ArrayList<Terminal>();
+		translate(input, new OutputSink() {
+			@Override
+			public void emit(Terminal terminal) {
+				ret.add(terminal);
+			}
+
+			@Override
+			public void emit(List<Terminal> terminals) {
+				ret.addAll(terminals);
+			}
+
+			@Override
+			public void flush() {
+			}
+		});
+		return ret;
+	}
+
+	// translates a whole input in one go, flushing the output at the end
+	public void translate(Iterable<Terminal> input, OutputSink output) {
+		final Run run = start(output);
+		for (Terminal terminal : input) {
+			run.accept(terminal);
+		}
+		run.finish();
+	}
+
+	public class Run {
+
+		private final OutputSink output;
+		private final Deque<State> stack = new ArrayDeque<State>();
+		private State state = automaton.initialState();
+		private boolean finished = false;
+		private long position = 0;
+
+		private Run(OutputSink output) {
+			if (output == null)
+				throw new IllegalArgumentException("output must not be null");
+			this.output = output;
+		}
+
+		public void accept(Terminal terminal) {
+			if (terminal == null)
+				throw new IllegalArgumentException("terminal must not be null");
+			if (finished)
+				throw new IllegalStateException("translation already finished");
+			step(terminal);
+			++position;
+		}
+
+		// signals the end of the input and flushes the output,
+		// throws if the input was incomplete
+		public void finish() {
+			if (finished)
+				throw new IllegalStateException("translation already finished");
+			step(null);
+			finished = true;
+			output.flush();
+		}
+
+		// takes actions until the terminal is consumed, or for the end of
+		// input (null), until the outermost expansion is complete
+		private void step(Terminal terminal) {
+			while (true) {
+				final Action action = state.actionOn(terminal);
+				if (action == null)
+					throw new RuntimeException("unexpected " + (terminal == null ? "end of input" : terminal)
+							+ " at position " + position + ", expected one of " + state.expectedTerminals());
+				if (!action.outputs.isEmpty())
+					output.emit(action.outputs);
+				switch (action.kind) {
+				case SHIFT:
+					state = action.target;
+					return;
+				case EMIT:
+					state = action.target;
+					break;
+				case PUSH:
+					stack.push(action.returnState);
+					state = action.target;
+					break;
+				case POP:
+					if (stack.isEmpty()) {
+						if (terminal == null)
+							return;
+						throw new RuntimeException("unexpected " + terminal + " at position " + position
+								+ ", input should have ended");
+					}
+					state = stack.pop();
+					break;
+				}
+			}
+		}
+	}
+}
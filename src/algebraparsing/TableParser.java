@@ -0,0 +1,105 @@
+package algebraparsing;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// runs a ParseTable over a stream of terminal ids (see ParseTable.terminalId()),
+// passing the ids of output terminals to a sink as they're emitted.
+// the stack is a plain int array, so once it's grown to the nesting depth of
+// the input nothing at all is allocated per terminal.
+// an instance is a single parse in progress and isn't safe to share between threads.
+public class TableParser {
+
+	private static final int INITIAL_STACK_SIZE = 64;
+
+	private final ParseTable table;
+	private final IntConsumer output;
+
+	private int[] stack = new int[INITIAL_STACK_SIZE];
+	private int depth = 0;
+	private int state = 0;
+	private long position = 0;
+	private boolean finished = false;
+
+	public TableParser(ParseTable table, IntConsumer output) {
+		if (table == null)
+			throw new IllegalArgumentException("table must not be null");
+		if (output == null)
+			throw new IllegalArgumentException("output must not be null");
+		this.table = table;
+		this.output = output;
+	}
+
+	// starts over on a new input, keeping the stack that's already been allocated
+	public void reset() {
+		depth = 0;
+		state = 0;
+		position = 0;
+		finished = false;
+	}
+
+	public void accept(int terminalId) {
+		if (terminalId < 0 || terminalId >= table.terminalCount())
+			throw new IllegalArgumentException("unknown terminal id " + terminalId + " at position " + position);
+		if (finished)
+			throw new IllegalStateException("parse already finished");
+		step(terminalId);
+		++position;
+	}
+
+	public void accept(int[] terminalIds, int offset, int length) {
+		for (int i = offset; i < offset + length; ++i) {
+			accept(terminalIds[i]);
+		}
+	}
+
+	// signals the end of the input, throws if the input was incomplete
+	public void finish() {
+		if (finished)
+			throw new IllegalStateException("parse already finished");
+		step(table.endColumn());
+		finished = true;
+	}
+
+	private void step(int column) {
+		while (true) {
+			final int action = table.action(state, column);
+			switch (ParseTable.kind(action)) {
+			case ParseTable.SHIFT:
+				emit(table.operand(state, column));
+				state = ParseTable.target(action);
+				return;
+			case ParseTable.EMIT:
+				emit(table.operand(state, column));
+				state = ParseTable.target(action);
+				break;
+			case ParseTable.PUSH:
+				if (depth == stack.length)
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				stack[depth++] = table.operand(state, column);
+				state = ParseTable.target(action);
+				break;
+			case ParseTable.POP:
+				if (depth == 0) {
+					if (column == table.endColumn())
+						return;
+					throw new RuntimeException("unexpected " + table.terminal(column) + " at position "
+							+ position + ", input should have ended");
+				}
+				state = stack[--depth];
+				break;
+			default:
+				throw new RuntimeException("unexpected "
+						+ (column == table.endColumn() ? "end of input" : table.terminal(column).toString())
+						+ " at position " + position);
+			}
+		}
+	}
+
+	private void emit(int outputList) {
+		final int end = table.outputsEnd(outputList);
+		for (int i = table.outputsStart(outputList); i < end; ++i) {
+			output.accept(table.output(i));
+		}
+	}
+}
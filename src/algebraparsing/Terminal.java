@@ -12,6 +12,11 @@ public class Terminal {
 		this.s = s;
 	}
 	
+	// the terminal itself, toString() quotes it
+	public String getText() {
+		return s;
+	}
+	
 	@Override
 	public String toString() {
 		return "'" + s + "'";
@@ -46,4 +46,19 @@ public final class TerminalOrNonterminal<T> {
 		}
 		return o.toString();
 	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if (other == null) return false;
+		if (!(other instanceof TerminalOrNonterminal)) return false;
+		TerminalOrNonterminal<?> ton = (TerminalOrNonterminal<?>) other;
+		if (this.isTerminal())
+			return ton.isTerminal() && this.terminal.equals(ton.terminal);
+		return !ton.isTerminal() && this.nonterminal.equals(ton.nonterminal);
+	}
+	
+	@Override
+	public int hashCode() {
+		return this.isTerminal() ? terminal.hashCode() : ~nonterminal.hashCode();
+	}
 }
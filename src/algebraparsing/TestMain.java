@@ -1,11 +1,18 @@
 package algebraparsing;
 
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
 
 import algebraparsing.Grammar.TerminalConsolidator;
-import algebraparsing.KleeneAlgebra.DecomposedRegexp;
 import algebraparsing.KleeneAlgebra.KleeneMatrix;
+import algebraparsing.KleeneAlgebra.RegexpDagFormat;
 import algebraparsing.KleeneAlgebra.RegularExpression;
 
 public class TestMain {
@@ -405,7 +412,7 @@ public class TestMain {
 		return new Grammar<InputOrOutputTerminal, Translation>(startSymbol, productions, TC_SSDTS);
 	}
 
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
 		
 		//Grammar grammar = grammar2();
 		//Grammar<Terminal, Terminal> grammar = logicExpression();
@@ -419,11 +426,39 @@ public class TestMain {
 		Map<Nonterminal, RegularExpression<TerminalOrNonterminal<Translation>>> nonterminalExpansions =
 				processGrammar(mvg);
 		
+		List<Terminal> input = Arrays.asList(
+				new Terminal("not"), new Terminal("sym"), new Terminal("implies"),
+				new Terminal("sym"), new Terminal("and"), new Terminal("sym"), new Terminal('$'));
 		
+		SdtsTransducer transducer = new SdtsTransducer(
+				new TranslationAutomaton(grammar.startSymbol(), nonterminalExpansions));
+		System.out.println(transducer.translate(input));
+		
+		final ParseTable generated = enumerateStates(grammar.startSymbol(), nonterminalExpansions);
+		System.out.println(generated);
+		
+		// run the parser off the mapped file rather than the generated table
+		Path tableFile = Files.createTempFile("logic", ".apt");
+		ParseTableFile.write(generated, tableFile);
+		final ParseTable table = ParseTableFile.map(tableFile);
+		tableFile.toFile().deleteOnExit();
+		final List<Terminal> output = new ArrayList<Terminal>();
+		TableParser parser = new TableParser(table, new IntConsumer() {
+			@Override
+			public void accept(int outputId) {
+				output.add(table.outputSymbol(outputId));
+			}
+		});
+		// and on terminals lexed from text, rather than split by hand
+		final int[] lexed = KeywordLexer.forParseTable(table).lex(
+				ByteBuffer.wrap("not sym implies sym and sym $".getBytes(StandardCharsets.UTF_8)));
+		parser.accept(lexed, 0, lexed.length);
+		parser.finish();
+		System.out.println(output);
 	}
 	
 	private static <T> Map<Nonterminal, RegularExpression<TerminalOrNonterminal<T>>> 
-			processGrammar(MatrixVectorGrammar<T> mvg) {
+			processGrammar(MatrixVectorGrammar<T> mvg) throws IOException {
 		System.out.println(mvg.matrix);
 		System.out.println();
 		System.out.println(mvg.vector);
@@ -434,7 +469,7 @@ public class TestMain {
 				new Function<RegularExpression<TerminalOrNonterminal<T>>, RegularExpression<TerminalOrNonterminal<T>>>() {
 			@Override
 			public RegularExpression<TerminalOrNonterminal<T>> apply(RegularExpression<TerminalOrNonterminal<T>> t) {
-				return RegularExpression.reversal(t);
+				return t.reverse();
 			}
 		};
 		
@@ -442,86 +477,47 @@ public class TestMain {
 				mvg.matrix.projectionThroughMorphism(reversal);
 		
 		System.out.println(m);
-		System.out.println(m.close());
 		
 		KleeneMatrix<RegularExpression<TerminalOrNonterminal<T>>> vec = mvg.vector.projectionThroughMorphism(reversal);
 
 		System.out.println(vec);
-		vec = m.close().mul(vec);
 		
 		Map<Nonterminal, RegularExpression<TerminalOrNonterminal<T>>> nonterminalExpansions =
-				new HashMap<Nonterminal, RegularExpression<TerminalOrNonterminal<T>>>();
+				mvg.solve();
 		
+		System.out.println(nonterminalExpansions);
+		
+		// the expansions share most of their subexpressions, written out in
+		// full they can be exponential in the size of the grammar. they're
+		// dumped as a column in nonterminal order, without ever building the
+		// closure of the matrix
+		final List<List<RegularExpression<TerminalOrNonterminal<T>>>> column =
+				new ArrayList<List<RegularExpression<TerminalOrNonterminal<T>>>>();
+		for (int i = 0; i < mvg.nonterminalIndexMap.size(); ++i) {
+			column.add(null);
+		}
 		for (Map.Entry<Nonterminal, Integer> entry : mvg.nonterminalIndexMap.entrySet()) {
-			nonterminalExpansions.put(entry.getKey(), vec.getAt(entry.getValue(), 0));
+			column.set(entry.getValue(), Collections.singletonList(nonterminalExpansions.get(entry.getKey())));
 		}
-		
-		//enumerateStates(initialNonterminal, nonterminalExpansions);
-		
-		System.out.println(nonterminalExpansions);
+		RegexpDagFormat.write(new KleeneMatrix<RegularExpression<TerminalOrNonterminal<T>>>(column,
+				RegularExpression.<TerminalOrNonterminal<T>>emptyRegexp(),
+				RegularExpression.<TerminalOrNonterminal<T>>emptyString()),
+				new Function<TerminalOrNonterminal<T>, String>() {
+			@Override
+			public String apply(TerminalOrNonterminal<T> t) {
+				return t.toString();
+			}
+		}, new OutputStreamWriter(System.out));
 		
 		return nonterminalExpansions;
 	}
 	
-	public static void enumerateStates(
+	// enumerates the states of the pushdown automaton for the translation
+	// and flattens them into tables
+	public static ParseTable enumerateStates(
 			Nonterminal initialNonterminal,
 			Map<Nonterminal, RegularExpression<TerminalOrNonterminal<Translation>>> nonterminalExpansions) {
-		
-		Set<RegularExpression<TerminalOrNonterminal<Translation>>> visited =
-				new HashSet<RegularExpression<TerminalOrNonterminal<Translation>>>();
-		Stack<RegularExpression<TerminalOrNonterminal<Translation>>> stack =
-				new Stack<RegularExpression<TerminalOrNonterminal<Translation>>>();
-		
-		RegularExpression<TerminalOrNonterminal<Translation>> initial = RegularExpression.fromAtom(TerminalOrNonterminal.fromNonterminal(initialNonterminal));
-
-		visited.add(initial);
-		stack.push(initial);
-		
-		while (!stack.isEmpty()) {
-			RegularExpression<TerminalOrNonterminal<Translation>> cur = stack.pop();
-			DecomposedRegexp<TerminalOrNonterminal<Translation>> decomp = cur.decompose();
-			
-			if (decomp.hasEmptyString()) {
-				// this is where we would pop the stack, don't handle this case right now
-				continue;
-			}
-			
-			Map<Terminal, RegularExpression<TerminalOrNonterminal<Translation>>> transitionMap =
-					new HashMap<Terminal, RegularExpression<TerminalOrNonterminal<Translation>>>();
-			
-			for (Map.Entry<TerminalOrNonterminal<Translation>, RegularExpression<TerminalOrNonterminal<Translation>>>
-					entry : decomp.nonemptyTerms().entrySet()) {
-				TerminalOrNonterminal<Translation> keyOrig = entry.getKey();
-				RegularExpression<TerminalOrNonterminal<Translation>> valueOrig = entry.getValue();
-				
-				Terminal keyNew;
-				RegularExpression<TerminalOrNonterminal<Translation>> valueNew;
-				if (keyOrig.isTerminal()) {
-					Translation translation = keyOrig.asTerminal();
-					if (translation.noInput())
-						throw new RuntimeException("this case not currently handled");
-					
-					keyNew = translation.head();
-					Translation tail = translation.tail();
-					
-					if (tail.noInput()) {
-						valueNew = valueOrig;
-					} else {
-						valueNew = RegularExpression.fromAtom(TerminalOrNonterminal
-								.fromTerminal(tail)).mul(valueOrig);
-					}
-				} else {
-					Nonterminal nonterminal = keyOrig.asNonterminal();
-					
-					// for now, we'll assume that this is a case where we push onto the
-					// stack, but don't actually handle it right now
-					
-					
-					
-					
-				}
-			}
-		}
+		return ParseTable.generate(new TranslationAutomaton(initialNonterminal, nonterminalExpansions));
 	}
 	
 	private static void test2x2() {
@@ -5,18 +5,56 @@ import java.util.*;
 // represents a string of terminals
 // that translates to a second string
 // of terminals
+//
+// the inputs are kept in an array shared with every tail() of the
+// translation, a tail just starts further along it, so taking one is O(1)
+// however long the translation. so are hashCode(), from list hash codes of
+// every suffix of the inputs worked out once, and equals() on translations
+// that differ.
 public class Translation {
 
-	private final List<Terminal> inputs;
+	// the inputs are inputs[offset] onwards
+	private final Terminal[] inputs;
+	private final int offset;
+	// inputHashes[i] is the list hash code of inputs[i] onwards
+	private final int[] inputHashes;
 	private final List<Terminal> outputs;
+	private final int outputsHash;
 	
 	public Translation(List<Terminal> inputs, List<Terminal> outputs) {
-		this.inputs = Collections.unmodifiableList(inputs);
+		this.inputs = inputs.toArray(new Terminal[inputs.size()]);
+		this.offset = 0;
+		this.inputHashes = suffixHashes(this.inputs);
 		this.outputs = Collections.unmodifiableList(outputs);
+		this.outputsHash = outputs.hashCode();
 	}
 
+	private Translation(Translation translation, int offset) {
+		this.inputs = translation.inputs;
+		this.offset = offset;
+		this.inputHashes = translation.inputHashes;
+		this.outputs = translation.outputs;
+		this.outputsHash = translation.outputsHash;
+	}
+	
+	// what List.hashCode() gives for each suffix, h(i) = 31 h(i + 1) +
+	// hash(terminal i) unrolled so it can be done from the back
+	private static int[] suffixHashes(Terminal[] terminals) {
+		final int[] ret = new int[terminals.length + 1];
+		ret[terminals.length] = 1;
+		int power = 1;
+		int sum = 0;
+		for (int i = terminals.length - 1; i >= 0; --i) {
+			sum += power * (terminals[i] == null ? 0 : terminals[i].hashCode());
+			power *= 31;
+			ret[i] = power + sum;
+		}
+		return ret;
+	}
+	
+	// a view of the inputs, made on every call
 	public List<Terminal> getInputs() {
-		return inputs;
+		return new Inputs(inputs, offset, inputHashes[offset]);
 	}
 	
 	public List<Terminal> getOutputs() {
@@ -24,27 +62,31 @@ public class Translation {
 	}
 	
 	public boolean noInput() {
-		return this.inputs.isEmpty();
+		return offset == inputs.length;
+	}
+	
+	public int inputCount() {
+		return inputs.length - offset;
 	}
 	
 	public Terminal head() {
-		if (this.inputs.isEmpty())
+		if (noInput())
 			throw new RuntimeException("no input terminals");
 
-		return inputs.get(0);
+		return inputs[offset];
 	}
 	
 	public Translation tail() {
-		if (this.inputs.isEmpty())
+		if (noInput())
 			throw new RuntimeException("no input terminals");
 		
-		return new Translation(inputs.subList(1, inputs.size()), outputs);
+		return new Translation(this, offset + 1);
 	}
 	
 	public String toString() {
 		final StringBuilder sb = new StringBuilder();
-		for (Terminal terminal : inputs) {
-			sb.append(terminal.toString());
+		for (int i = offset; i < inputs.length; ++i) {
+			sb.append(inputs[i].toString());
 		}
 		for (Terminal terminal : outputs) {
 			sb.append(" out(" + terminal.toString() + ")");
@@ -54,7 +96,7 @@ public class Translation {
 	
 	@Override
 	public int hashCode() {
-		return inputs.hashCode() ^ outputs.hashCode();
+		return inputHashes[offset] ^ outputsHash;
 	}
 	
 	@Override
@@ -62,6 +104,45 @@ public class Translation {
 		if (o == null) return false;
 		if (!(o instanceof Translation)) return false;
 		Translation t = (Translation) o;
-		return t.inputs.equals(this.inputs) && t.outputs.equals(this.outputs);
+		if (t.inputCount() != inputCount() || t.inputHashes[t.offset] != inputHashes[offset]
+				|| t.outputsHash != outputsHash)
+			return false;
+		if (t.inputs != inputs || t.offset != offset) {
+			for (int i = 0; i < inputCount(); ++i) {
+				if (!Objects.equals(t.inputs[t.offset + i], inputs[offset + i]))
+					return false;
+			}
+		}
+		return t.outputs.equals(this.outputs);
+	}
+	
+	// the inputs from some offset on, read only
+	private static final class Inputs extends AbstractList<Terminal> implements RandomAccess {
+		private final Terminal[] terminals;
+		private final int offset;
+		private final int hash;
+		
+		Inputs(Terminal[] terminals, int offset, int hash) {
+			this.terminals = terminals;
+			this.offset = offset;
+			this.hash = hash;
+		}
+		
+		@Override
+		public Terminal get(int index) {
+			if (index < 0 || index >= size())
+				throw new IndexOutOfBoundsException("index " + index + ", size " + size());
+			return terminals[offset + index];
+		}
+		
+		@Override
+		public int size() {
+			return terminals.length - offset;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
 	}
 }
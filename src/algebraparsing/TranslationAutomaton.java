@@ -0,0 +1,482 @@
+package algebraparsing;
+
+import java.util.*;
+
+import algebraparsing.KleeneAlgebra.CompileContext;
+import algebraparsing.KleeneAlgebra.DecomposedRegexp;
+import algebraparsing.KleeneAlgebra.RegularExpression;
+
+// a pushdown automaton for a syntax directed translation, built from the
+// expansions of its nonterminals (as computed by MatrixVectorGrammar.solve()).
+//
+// a state is a regular expression over translations and nonterminals, namely
+// whatever is left to match of some expansion.  states are derived lazily, by
+// decomposing the regular expression, and the action to take in a state is
+// chosen with one terminal of lookahead:
+//   SHIFT  consume the lookahead (a translation starting with it comes next)
+//   EMIT   emit a translation that consumes no input
+//   PUSH   enter the expansion of a nonterminal, remembering where to return to
+//   POP    the current expansion is complete, return to the caller
+// alternatives that can consume the lookahead take precedence over ones that
+// complete without input, unless the lookahead can also follow the current
+// expansion once it's complete. that, two alternatives that can both consume
+// it, or none that can and two that can complete (popping being one way to
+// complete), means the translation isn't deterministic with one lookahead
+// and we give up.
+public class TranslationAutomaton {
+
+	private static final Terminal END = null;
+
+	public static enum ActionKind { SHIFT, EMIT, PUSH, POP }
+
+	public static final class Action {
+		public final ActionKind kind;
+		// state to go to, null for POP
+		public final State target;
+		// state to return to, only for PUSH
+		public final State returnState;
+		// output terminals to emit when taking the action
+		public final List<Terminal> outputs;
+
+		private Action(ActionKind kind, State target, State returnState, List<Terminal> outputs) {
+			this.kind = kind;
+			this.target = target;
+			this.returnState = returnState;
+			this.outputs = outputs;
+		}
+
+		@Override
+		public String toString() {
+			switch (kind) {
+			case SHIFT: return "shift " + target.id + (outputs.isEmpty() ? "" : " out" + outputs);
+			case EMIT: return "emit" + outputs + " " + target.id;
+			case PUSH: return "push " + returnState.id + ", goto " + target.id;
+			default: return "pop";
+			}
+		}
+	}
+
+	public final class State {
+		public final int id;
+		public final RegularExpression<TerminalOrNonterminal<Translation>> regexp;
+		// every action of the state, resolved together the first time
+		// one is asked for and never changed after, so runs sharing the
+		// automaton only take the lock once per state
+		private volatile ActionTable actions;
+
+		private State(int id, RegularExpression<TerminalOrNonterminal<Translation>> regexp) {
+			this.id = id;
+			this.regexp = regexp;
+		}
+
+		// null if the lookahead is an error in this state,
+		// pass null as the lookahead for the end of the input
+		public Action actionOn(Terminal lookahead) {
+			return actions().actionOn(lookahead);
+		}
+
+		// the terminals for which this state does anything other than pop
+		public Set<Terminal> expectedTerminals() {
+			return actions().expected;
+		}
+
+		private ActionTable actions() {
+			ActionTable ret = actions;
+			if (ret == null) {
+				synchronized (TranslationAutomaton.this) {
+					ret = actions;
+					if (ret == null) {
+						ret = resolveAll(this);
+						actions = ret;
+					}
+				}
+			}
+			return ret;
+		}
+
+		@Override
+		public String toString() {
+			return id + ": " + regexp;
+		}
+	}
+
+	// the actions of a state on the terminals it expects, any other
+	// lookahead gets the same action as the end of the input, since no
+	// alternative can consume it
+	private static final class ActionTable {
+		final Map<Terminal, Action> actions;
+		final Action atEnd;
+		final Set<Terminal> expected;
+
+		ActionTable(Map<Terminal, Action> actions, Action atEnd) {
+			this.actions = actions;
+			this.atEnd = atEnd;
+			this.expected = Collections.unmodifiableSet(actions.keySet());
+		}
+
+		Action actionOn(Terminal lookahead) {
+			final Action ret = actions.get(lookahead);
+			return ret != null ? ret : atEnd;
+		}
+	}
+
+	private final Map<Nonterminal, RegularExpression<TerminalOrNonterminal<Translation>>> expansions;
+	private final Nonterminal initialNonterminal;
+	private final State initialState;
+
+	private final Map<RegularExpression<TerminalOrNonterminal<Translation>>, State> states =
+			new HashMap<RegularExpression<TerminalOrNonterminal<Translation>>, State>();
+	private final List<State> stateList = new ArrayList<State>();
+
+	private final Map<RegularExpression<TerminalOrNonterminal<Translation>>, DecomposedRegexp<TerminalOrNonterminal<Translation>>> decompositions =
+			new HashMap<RegularExpression<TerminalOrNonterminal<Translation>>, DecomposedRegexp<TerminalOrNonterminal<Translation>>>();
+
+	// results of the analysis of which terminals can come first
+	// and which regexps can complete without consuming input
+	private final Map<RegularExpression<TerminalOrNonterminal<Translation>>, Set<Terminal>> firsts =
+			new HashMap<RegularExpression<TerminalOrNonterminal<Translation>>, Set<Terminal>>();
+	private final Set<RegularExpression<TerminalOrNonterminal<Translation>>> nullables =
+			new HashSet<RegularExpression<TerminalOrNonterminal<Translation>>>();
+	// the terminals that can come after each regexp an expansion decomposes
+	// into has been completed, END for the end of the input. only worked
+	// out once some state can both consume and complete
+	private Map<RegularExpression<TerminalOrNonterminal<Translation>>, Set<Terminal>> follows = null;
+
+	public TranslationAutomaton(Nonterminal initialNonterminal,
+			Map<Nonterminal, RegularExpression<TerminalOrNonterminal<Translation>>> expansions) {
+		if (initialNonterminal == null)
+			throw new IllegalArgumentException("initial nonterminal must not be null");
+		if (!expansions.containsKey(initialNonterminal))
+			throw new IllegalArgumentException(initialNonterminal + " has no expansion");
+		this.expansions = new HashMap<Nonterminal, RegularExpression<TerminalOrNonterminal<Translation>>>(expansions);
+		this.initialNonterminal = initialNonterminal;
+
+		analyze(new ArrayList<RegularExpression<TerminalOrNonterminal<Translation>>>(this.expansions.values()));
+		checkNoEmptyCycles();
+
+		this.initialState = stateFor(expansions.get(initialNonterminal));
+	}
+
+	public static TranslationAutomaton fromGrammar(Grammar<InputOrOutputTerminal, Translation> grammar) {
+		return new TranslationAutomaton(grammar.startSymbol(), grammar.asAffineEndomorphism().solve());
+	}
+
+	public State initialState() {
+		return initialState;
+	}
+
+	// number of states derived so far
+	public synchronized int stateCount() {
+		return stateList.size();
+	}
+
+	public synchronized State state(int id) {
+		return stateList.get(id);
+	}
+
+	private State stateFor(RegularExpression<TerminalOrNonterminal<Translation>> regexp) {
+		State state = states.get(regexp);
+		if (state == null) {
+			CompileContext.stateCreated();
+			state = new State(stateList.size(), regexp);
+			states.put(regexp, state);
+			stateList.add(state);
+		}
+		return state;
+	}
+
+	private DecomposedRegexp<TerminalOrNonterminal<Translation>> decompose(
+			RegularExpression<TerminalOrNonterminal<Translation>> regexp) {
+		DecomposedRegexp<TerminalOrNonterminal<Translation>> ret = decompositions.get(regexp);
+		if (ret == null) {
+			ret = regexp.decompose();
+			decompositions.put(regexp, ret);
+		}
+		return ret;
+	}
+
+	private ActionTable resolveAll(State state) {
+		final Map<Terminal, Action> actions = new HashMap<Terminal, Action>();
+		for (Terminal terminal : first(state.regexp)) {
+			actions.put(terminal, resolve(state, terminal));
+		}
+		return new ActionTable(actions, resolve(state, END));
+	}
+
+	private Action resolve(State state, Terminal lookahead) {
+		final DecomposedRegexp<TerminalOrNonterminal<Translation>> decomp = decompose(state.regexp);
+
+		// alternatives that can consume the lookahead, and
+		// alternatives that can finish without consuming anything
+		final List<Action> consuming = new ArrayList<Action>();
+		final List<Action> completing = new ArrayList<Action>();
+
+		for (Map.Entry<TerminalOrNonterminal<Translation>, RegularExpression<TerminalOrNonterminal<Translation>>>
+				entry : decomp.nonemptyTerms().entrySet()) {
+			final RegularExpression<TerminalOrNonterminal<Translation>> continuation = entry.getValue();
+			if (entry.getKey().isTerminal()) {
+				final Translation translation = entry.getKey().asTerminal();
+				if (!translation.noInput()) {
+					if (lookahead != END && translation.head().equals(lookahead))
+						consuming.add(shift(translation, continuation));
+				} else {
+					final Action emit = new Action(ActionKind.EMIT, stateFor(continuation), null,
+							translation.getOutputs());
+					if (lookahead != END && first(continuation).contains(lookahead))
+						consuming.add(emit);
+					else if (nullable(continuation))
+						completing.add(emit);
+				}
+			} else {
+				final RegularExpression<TerminalOrNonterminal<Translation>> expansion =
+						expansions.get(entry.getKey().asNonterminal());
+				final Action push = new Action(ActionKind.PUSH, stateFor(expansion), stateFor(continuation),
+						Collections.<Terminal>emptyList());
+				if (lookahead != END && (first(expansion).contains(lookahead)
+						|| nullable(expansion) && first(continuation).contains(lookahead)))
+					consuming.add(push);
+				else if (nullable(expansion) && nullable(continuation))
+					completing.add(push);
+			}
+		}
+
+		if (consuming.size() == 1) {
+			// completing here would leave the lookahead to whatever follows
+			// the expansion, and if that can consume it too it's two ways
+			// to go on
+			if ((decomp.hasEmptyString() || !completing.isEmpty()) && follow(state.regexp).contains(lookahead))
+				throw new RuntimeException("translation isn't deterministic in state " + state
+						+ " on " + lookahead + ": " + consuming.get(0) + " or completing "
+						+ (decomp.hasEmptyString() ? "with pop" : completing.toString()));
+			return consuming.get(0);
+		}
+		if (consuming.size() > 1)
+			throw new RuntimeException("translation isn't deterministic in state " + state
+					+ " on " + lookahead + ": " + consuming);
+
+		// completing the current expansion directly is one more way to
+		// complete it, and any other way might emit something, so with
+		// both it's two translations of the same input
+		if (decomp.hasEmptyString())
+			completing.add(new Action(ActionKind.POP, null, null, Collections.<Terminal>emptyList()));
+		if (completing.size() == 1)
+			return completing.get(0);
+		if (completing.size() > 1)
+			throw new RuntimeException("translation isn't deterministic in state " + state
+					+ " at " + (lookahead == END ? "end of input" : lookahead.toString()) + ": " + completing);
+		return null;
+	}
+
+	private Action shift(Translation translation,
+			RegularExpression<TerminalOrNonterminal<Translation>> continuation) {
+		final Translation tail = translation.tail();
+		if (tail.noInput()) {
+			// that was the last input of the translation, so its outputs are due
+			return new Action(ActionKind.SHIFT, stateFor(continuation), null, translation.getOutputs());
+		}
+		return new Action(ActionKind.SHIFT,
+				stateFor(RegularExpression.fromAtom(TerminalOrNonterminal.fromTerminal(tail)).mul(continuation)),
+				null, Collections.<Terminal>emptyList());
+	}
+
+	private Set<Terminal> first(RegularExpression<TerminalOrNonterminal<Translation>> regexp) {
+		if (!firsts.containsKey(regexp))
+			analyze(Collections.singletonList(regexp));
+		return firsts.get(regexp);
+	}
+
+	private boolean nullable(RegularExpression<TerminalOrNonterminal<Translation>> regexp) {
+		if (!firsts.containsKey(regexp))
+			analyze(Collections.singletonList(regexp));
+		return nullables.contains(regexp);
+	}
+
+	private Set<Terminal> follow(RegularExpression<TerminalOrNonterminal<Translation>> regexp) {
+		if (follows == null)
+			follows = computeFollows();
+		final Set<Terminal> ret = follows.get(regexp);
+		// only regexps with a shifted translation in front aren't there,
+		// and those can't complete
+		return ret != null ? ret : Collections.<Terminal>emptySet();
+	}
+
+	// the follow set of each nonterminal, as a least fixed point over the
+	// places nonterminals occur in the regexps each expansion decomposes
+	// into, and then for each of those regexps, the follow sets of the
+	// nonterminals whose expansions decompose into it
+	private Map<RegularExpression<TerminalOrNonterminal<Translation>>, Set<Terminal>> computeFollows() {
+		final Map<Nonterminal, Set<RegularExpression<TerminalOrNonterminal<Translation>>>> derivatives =
+				new HashMap<Nonterminal, Set<RegularExpression<TerminalOrNonterminal<Translation>>>>();
+		// each occurrence as the nonterminal whose expansion it's in, the
+		// nonterminal and what comes after it
+		final List<Nonterminal> owners = new ArrayList<Nonterminal>();
+		final List<Nonterminal> occurring = new ArrayList<Nonterminal>();
+		final List<RegularExpression<TerminalOrNonterminal<Translation>>> continuations =
+				new ArrayList<RegularExpression<TerminalOrNonterminal<Translation>>>();
+		final Map<Nonterminal, Set<Terminal>> nonterminalFollows = new HashMap<Nonterminal, Set<Terminal>>();
+		for (Map.Entry<Nonterminal, RegularExpression<TerminalOrNonterminal<Translation>>> entry : expansions.entrySet()) {
+			nonterminalFollows.put(entry.getKey(), new HashSet<Terminal>());
+			final Set<RegularExpression<TerminalOrNonterminal<Translation>>> visited =
+					new HashSet<RegularExpression<TerminalOrNonterminal<Translation>>>();
+			final Deque<RegularExpression<TerminalOrNonterminal<Translation>>> stack =
+					new ArrayDeque<RegularExpression<TerminalOrNonterminal<Translation>>>();
+			stack.push(entry.getValue());
+			while (!stack.isEmpty()) {
+				final RegularExpression<TerminalOrNonterminal<Translation>> regexp = stack.pop();
+				if (!visited.add(regexp))
+					continue;
+				for (Map.Entry<TerminalOrNonterminal<Translation>, RegularExpression<TerminalOrNonterminal<Translation>>>
+						term : decompose(regexp).nonemptyTerms().entrySet()) {
+					if (!term.getKey().isTerminal()) {
+						owners.add(entry.getKey());
+						occurring.add(term.getKey().asNonterminal());
+						continuations.add(term.getValue());
+					}
+					stack.push(term.getValue());
+				}
+			}
+			derivatives.put(entry.getKey(), visited);
+		}
+		nonterminalFollows.get(initialNonterminal).add(END);
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 0; i < occurring.size(); ++i) {
+				final Set<Terminal> follow = nonterminalFollows.get(occurring.get(i));
+				changed |= follow.addAll(first(continuations.get(i)));
+				if (nullable(continuations.get(i)))
+					changed |= follow.addAll(nonterminalFollows.get(owners.get(i)));
+			}
+		}
+
+		final Map<RegularExpression<TerminalOrNonterminal<Translation>>, Set<Terminal>> ret =
+				new HashMap<RegularExpression<TerminalOrNonterminal<Translation>>, Set<Terminal>>();
+		for (Map.Entry<Nonterminal, Set<RegularExpression<TerminalOrNonterminal<Translation>>>> entry : derivatives.entrySet()) {
+			for (RegularExpression<TerminalOrNonterminal<Translation>> regexp : entry.getValue()) {
+				Set<Terminal> follow = ret.get(regexp);
+				if (follow == null) {
+					follow = new HashSet<Terminal>();
+					ret.put(regexp, follow);
+				}
+				follow.addAll(nonterminalFollows.get(entry.getKey()));
+			}
+		}
+		return ret;
+	}
+
+	// the regexps that regexp depends on for the analysis, which are the ones
+	// reached without consuming input
+	private List<RegularExpression<TerminalOrNonterminal<Translation>>> dependencies(
+			RegularExpression<TerminalOrNonterminal<Translation>> regexp) {
+		final List<RegularExpression<TerminalOrNonterminal<Translation>>> ret =
+				new ArrayList<RegularExpression<TerminalOrNonterminal<Translation>>>();
+		for (Map.Entry<TerminalOrNonterminal<Translation>, RegularExpression<TerminalOrNonterminal<Translation>>>
+				entry : decompose(regexp).nonemptyTerms().entrySet()) {
+			if (entry.getKey().isTerminal()) {
+				if (entry.getKey().asTerminal().noInput())
+					ret.add(entry.getValue());
+			} else {
+				ret.add(expansions.get(entry.getKey().asNonterminal()));
+				ret.add(entry.getValue());
+			}
+		}
+		return ret;
+	}
+
+	// computes first sets and nullability for the given regexps and everything
+	// they depend on that hasn't been analyzed yet, as a least fixed point.
+	// regexps that were analyzed earlier already have their final values.
+	private void analyze(List<RegularExpression<TerminalOrNonterminal<Translation>>> roots) {
+		final List<RegularExpression<TerminalOrNonterminal<Translation>>> pending =
+				new ArrayList<RegularExpression<TerminalOrNonterminal<Translation>>>();
+		final Deque<RegularExpression<TerminalOrNonterminal<Translation>>> stack =
+				new ArrayDeque<RegularExpression<TerminalOrNonterminal<Translation>>>(roots);
+		while (!stack.isEmpty()) {
+			final RegularExpression<TerminalOrNonterminal<Translation>> regexp = stack.pop();
+			if (firsts.containsKey(regexp))
+				continue;
+			firsts.put(regexp, new HashSet<Terminal>());
+			pending.add(regexp);
+			stack.addAll(dependencies(regexp));
+		}
+
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (RegularExpression<TerminalOrNonterminal<Translation>> regexp : pending) {
+				final DecomposedRegexp<TerminalOrNonterminal<Translation>> decomp = decompose(regexp);
+				final Set<Terminal> first = firsts.get(regexp);
+				boolean nullable = decomp.hasEmptyString();
+				for (Map.Entry<TerminalOrNonterminal<Translation>, RegularExpression<TerminalOrNonterminal<Translation>>>
+						entry : decomp.nonemptyTerms().entrySet()) {
+					final RegularExpression<TerminalOrNonterminal<Translation>> continuation = entry.getValue();
+					if (entry.getKey().isTerminal()) {
+						final Translation translation = entry.getKey().asTerminal();
+						if (!translation.noInput()) {
+							changed |= first.add(translation.head());
+						} else {
+							changed |= first.addAll(firsts.get(continuation));
+							nullable |= nullables.contains(continuation);
+						}
+					} else {
+						final RegularExpression<TerminalOrNonterminal<Translation>> expansion =
+								expansions.get(entry.getKey().asNonterminal());
+						changed |= first.addAll(firsts.get(expansion));
+						if (nullables.contains(expansion)) {
+							changed |= first.addAll(firsts.get(continuation));
+							nullable |= nullables.contains(continuation);
+						}
+					}
+				}
+				if (nullable)
+					changed |= nullables.add(regexp);
+			}
+		}
+	}
+
+	// a nonterminal that can end up pushing itself without any input
+	// being consumed in between would make the runtime loop forever
+	private void checkNoEmptyCycles() {
+		final Map<Nonterminal, Set<Nonterminal>> calls = new HashMap<Nonterminal, Set<Nonterminal>>();
+		for (Map.Entry<Nonterminal, RegularExpression<TerminalOrNonterminal<Translation>>> entry : expansions.entrySet()) {
+			final Set<Nonterminal> called = new HashSet<Nonterminal>();
+			final Set<RegularExpression<TerminalOrNonterminal<Translation>>> visited =
+					new HashSet<RegularExpression<TerminalOrNonterminal<Translation>>>();
+			final Deque<RegularExpression<TerminalOrNonterminal<Translation>>> stack =
+					new ArrayDeque<RegularExpression<TerminalOrNonterminal<Translation>>>();
+			stack.push(entry.getValue());
+			while (!stack.isEmpty()) {
+				final RegularExpression<TerminalOrNonterminal<Translation>> regexp = stack.pop();
+				if (!visited.add(regexp))
+					continue;
+				for (Map.Entry<TerminalOrNonterminal<Translation>, RegularExpression<TerminalOrNonterminal<Translation>>>
+						term : decompose(regexp).nonemptyTerms().entrySet()) {
+					if (term.getKey().isTerminal()) {
+						if (term.getKey().asTerminal().noInput())
+							stack.push(term.getValue());
+					} else {
+						final Nonterminal nonterminal = term.getKey().asNonterminal();
+						called.add(nonterminal);
+						if (nullable(expansions.get(nonterminal)))
+							stack.push(term.getValue());
+					}
+				}
+			}
+			calls.put(entry.getKey(), called);
+		}
+
+		// transitive closure, looking for a nonterminal that reaches itself
+		for (Nonterminal nonterminal : calls.keySet()) {
+			final Set<Nonterminal> reached = new HashSet<Nonterminal>();
+			final Deque<Nonterminal> stack = new ArrayDeque<Nonterminal>(calls.get(nonterminal));
+			while (!stack.isEmpty()) {
+				final Nonterminal cur = stack.pop();
+				if (cur.equals(nonterminal))
+					throw new RuntimeException(nonterminal + " can call itself without consuming input");
+				if (reached.add(cur))
+					stack.addAll(calls.get(cur));
+			}
+		}
+	}
+}